@@ -0,0 +1,279 @@
+package software.kloud.classery.benchmark;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates synthetic plugin directories for the benchmarks. Every directory is a separate plugin directory:
+ * <ul>
+ * <li>{@code small}: many small jars with a few packages each</li>
+ * <li>{@code huge}: a few jars with tens of thousands of classes and resources</li>
+ * <li>{@code deep}: one jar whose classes mostly live in a single, deep package chain</li>
+ * <li>{@code fat}: Spring Boot style jars with {@code BOOT-INF/classes} and STORED {@code BOOT-INF/lib} jars</li>
+ * </ul>
+ * Class files are written directly, they are valid but have no members. Classes extend each other in short chains,
+ * classes of fat jars extend classes of their nested jars. Output only depends on the scale, so it can be cached
+ */
+public class SyntheticPlugins {
+    /**
+     * System property pointing at generated plugins, set by the {@code jmh} Gradle task
+     */
+    public static final String DIRECTORY_PROPERTY = "classery.benchmark.plugins";
+    public static final List<String> PLUGIN_SETS = List.of("small", "huge", "deep", "fat");
+    private static final String COMPLETE_MARKER = ".complete";
+    private static final int CLASS_FILE_VERSION = 55;
+    private static final int ACC_PUBLIC_SUPER = 0x0021;
+    private static final int ACC_PUBLIC_INTERFACE = 0x0601;
+    private static final String OBJECT = "java/lang/Object";
+
+    private final int scale;
+    private final Random random;
+
+    private SyntheticPlugins(int scale) {
+        this.scale = scale;
+        this.random = new Random(scale);
+    }
+
+    /**
+     * @param args target directory, optionally followed by a scale factor which multiplies all sizes
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SyntheticPlugins <directory> [scale]");
+            System.exit(1);
+        }
+        int scale = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        generate(new File(args[0]), scale);
+    }
+
+    /**
+     * @return Directory of the plugin set below {@link #DIRECTORY_PROPERTY} or the temporary directory,
+     * generated at scale 1 unless generated before
+     */
+    public static File getPluginDirectory(String pluginSet) throws IOException {
+        var configured = System.getProperty(DIRECTORY_PROPERTY);
+        File root;
+        if (configured != null) {
+            root = new File(configured);
+        } else {
+            root = new File(System.getProperty("java.io.tmpdir"), "classery-benchmark-plugins");
+        }
+        if (!new File(root, COMPLETE_MARKER).isFile()) generate(root, 1);
+        var directory = new File(root, pluginSet);
+        if (!directory.isDirectory()) {
+            throw new FileNotFoundException(String.format("Unknown plugin set %s", pluginSet));
+        }
+        return directory;
+    }
+
+    /**
+     * Generates all plugin sets below {@code root}, unless they were generated with the same scale before
+     */
+    public static synchronized void generate(File root, int scale) throws IOException {
+        var marker = new File(root, COMPLETE_MARKER);
+        var expected = String.valueOf(scale);
+        if (marker.isFile() && expected.equals(Files.readString(marker.toPath()).trim())) return;
+
+        var generator = new SyntheticPlugins(scale);
+        for (String pluginSet : PLUGIN_SETS) {
+            var directory = new File(root, pluginSet);
+            deleteRecursively(directory);
+            Files.createDirectories(directory.toPath());
+        }
+        generator.generateSmall(new File(root, "small"));
+        generator.generateHuge(new File(root, "huge"));
+        generator.generateDeep(new File(root, "deep"));
+        generator.generateFat(new File(root, "fat"));
+        Files.writeString(marker.toPath(), expected);
+    }
+
+    private void generateSmall(File directory) throws IOException {
+        for (int jar = 0; jar < 200 * scale; jar++) {
+            Map<String, byte[]> entries = new LinkedHashMap<>();
+            for (int pkg = 0; pkg < 5; pkg++) {
+                addPackage(entries, "", String.format("bench/small/j%d/p%d", jar, pkg), 10, null);
+            }
+            entries.put("META-INF/plugin.properties", resource(200));
+            writeJar(new File(directory, String.format("small-%04d.jar", jar)), entries, false);
+        }
+    }
+
+    private void generateHuge(File directory) throws IOException {
+        for (int jar = 0; jar < 2; jar++) {
+            Map<String, byte[]> entries = new LinkedHashMap<>();
+            for (int pkg = 0; pkg < 250 * scale; pkg++) {
+                var packageName = String.format("bench/huge/j%d/m%d/p%d", jar, pkg % 10, pkg);
+                addPackage(entries, "", packageName, 100, null);
+                for (int i = 0; i < 20; i++) {
+                    entries.put(String.format("%s/resource%d.txt", packageName, i), resource(2048));
+                }
+            }
+            writeJar(new File(directory, String.format("huge-%d.jar", jar)), entries, false);
+        }
+    }
+
+    /**
+     * Almost all classes are in one package chain, like the single {@code com/} tree of most jars
+     */
+    private void generateDeep(File directory) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        var packageName = new StringBuilder("bench/deep");
+        for (int depth = 0; depth < 12; depth++) {
+            packageName.append("/d").append(depth);
+            addPackage(entries, "", packageName.toString(), 200 * scale, null);
+            for (int side = 0; side < 3; side++) {
+                addPackage(entries, "", packageName + "/side" + side, 5, null);
+            }
+        }
+        addPackage(entries, "", "bench/other", 5, null);
+        writeJar(new File(directory, "deep.jar"), entries, false);
+    }
+
+    private void generateFat(File directory) throws IOException {
+        for (int jar = 0; jar < 5; jar++) {
+            Map<String, byte[]> entries = new LinkedHashMap<>();
+            List<String> libraryClasses = new ArrayList<>();
+            Map<String, byte[]> libraries = new LinkedHashMap<>();
+            for (int lib = 0; lib < 10; lib++) {
+                Map<String, byte[]> libraryEntries = new LinkedHashMap<>();
+                for (int pkg = 0; pkg < 10 * scale; pkg++) {
+                    libraryClasses.addAll(addPackage(libraryEntries, "",
+                            String.format("bench/fat/j%d/lib%d/p%d", jar, lib, pkg), 30, null));
+                }
+                libraries.put(String.format("BOOT-INF/lib/lib%d.jar", lib), toJar(libraryEntries, false));
+            }
+            for (int pkg = 0; pkg < 10 * scale; pkg++) {
+                addPackage(entries, "BOOT-INF/classes/", String.format("bench/fat/j%d/app/p%d", jar, pkg), 20, libraryClasses);
+            }
+            entries.putAll(libraries);
+            writeJar(new File(directory, String.format("fat-%d.jar", jar)), entries, true);
+        }
+    }
+
+    /**
+     * Adds an interface {@code Api} and {@code classCount} classes implementing it. Every class but each fifth extends
+     * the previous one, the first of each chain extends a random class of {@code superClasses} if given
+     *
+     * @return Internal names of the added classes
+     */
+    private List<String> addPackage(
+            Map<String, byte[]> entries,
+            String entryPrefix,
+            String packageName,
+            int classCount,
+            List<String> superClasses
+    ) {
+        var api = packageName + "/Api";
+        entries.put(entryPrefix + api + ".class", classFile(api, OBJECT, ACC_PUBLIC_INTERFACE));
+        List<String> classNames = new ArrayList<>(classCount);
+        for (int i = 0; i < classCount; i++) {
+            var className = String.format("%s/C%d", packageName, i);
+            String superName;
+            if (i % 5 != 0) {
+                superName = classNames.get(i - 1);
+            } else if (superClasses != null && !superClasses.isEmpty()) {
+                superName = superClasses.get(random.nextInt(superClasses.size()));
+            } else {
+                superName = OBJECT;
+            }
+            entries.put(entryPrefix + className + ".class", classFile(className, superName, ACC_PUBLIC_SUPER, api));
+            classNames.add(className);
+        }
+        return classNames;
+    }
+
+    private byte[] resource(int size) {
+        var sb = new StringBuilder(size);
+        while (sb.length() < size) {
+            sb.append("key").append(random.nextInt(1000)).append('=').append(Long.toHexString(random.nextLong())).append('\n');
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return Class file without members, {@code superName} and {@code interfaces} are internal names
+     */
+    static byte[] classFile(String className, String superName, int accessFlags, String... interfaces) {
+        var bytes = new ByteArrayOutputStream(64 + 2 * className.length());
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_FILE_VERSION);
+            // Every class reference takes a Utf8 and a Class entry
+            out.writeShort(1 + 2 * (2 + interfaces.length));
+            int index = 1;
+            for (String name : concat(className, superName, interfaces)) {
+                out.writeByte(1);
+                out.writeUTF(name);
+                out.writeByte(7);
+                out.writeShort(index);
+                index += 2;
+            }
+            out.writeShort(accessFlags);
+            out.writeShort(2);
+            out.writeShort(4);
+            out.writeShort(interfaces.length);
+            for (int i = 0; i < interfaces.length; i++) {
+                out.writeShort(6 + 2 * i);
+            }
+            out.writeShort(0); // fields
+            out.writeShort(0); // methods
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<String> concat(String className, String superName, String[] interfaces) {
+        List<String> names = new ArrayList<>(2 + interfaces.length);
+        names.add(className);
+        names.add(superName);
+        names.addAll(Arrays.asList(interfaces));
+        return names;
+    }
+
+    private static void writeJar(File file, Map<String, byte[]> entries, boolean stored) throws IOException {
+        Files.write(file.toPath(), toJar(entries, stored));
+    }
+
+    /**
+     * @param stored STORED instead of DEFLATED, like Spring Boot stores its nested jars
+     */
+    private static byte[] toJar(Map<String, byte[]> entries, boolean stored) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                var zipEntry = new ZipEntry(entry.getKey());
+                if (stored) {
+                    var crc = new CRC32();
+                    crc.update(entry.getValue());
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(entry.getValue().length);
+                    zipEntry.setCompressedSize(entry.getValue().length);
+                    zipEntry.setCrc(crc.getValue());
+                }
+                zip.putNextEntry(zipEntry);
+                zip.write(entry.getValue());
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    public static void deleteRecursively(File file) throws IOException {
+        if (!file.exists()) return;
+        var children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        Files.delete(file.toPath());
+    }
+}
@@ -0,0 +1,93 @@
+package software.kloud.classery.jar;
+
+import org.openjdk.jmh.annotations.*;
+import software.kloud.classery.benchmark.SyntheticPlugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction of every jar of a plugin set through {@link JarExtractor}, the engine behind
+ * {@code JarFileScanner#unpackJarFileToDiskStorage}. The {@code bytes} and {@code entries} counters are reported per second,
+ * with {@code workers=single} {@code bytes} is the throughput of a single core
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExtractBenchmark {
+    @Param({"small", "huge", "fat"})
+    public String plugins;
+    @Param({"single", "pool"})
+    public String workers;
+    private final List<ZipArchive> jars = new ArrayList<>();
+    private final List<Path> targetDirectories = new ArrayList<>();
+    private ExecutorService executor;
+    private JarExtractor jarExtractor;
+    private Path root;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        var pluginDirectory = SyntheticPlugins.getPluginDirectory(plugins);
+        var jarFiles = pluginDirectory.listFiles((dir, name) -> JarFileScanner.isJarFileName(name));
+        if (jarFiles == null) throw new IOException(String.format("Can not list %s", pluginDirectory));
+        for (File jarFile : jarFiles) {
+            jars.add(ZipArchive.open(jarFile));
+        }
+        if ("pool".equals(workers)) {
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+        jarExtractor = new JarExtractor(executor);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("classery-bench");
+        targetDirectories.clear();
+        for (int i = 0; i < jars.size(); i++) {
+            targetDirectories.add(Files.createDirectory(root.resolve("jar" + i)));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        SyntheticPlugins.deleteRecursively(root.toFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        jars.forEach(ZipArchive::close);
+        jars.clear();
+        if (executor != null) executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void extract(Written written) throws IOException {
+        for (int i = 0; i < jars.size(); i++) {
+            var result = jarExtractor.extract(jars.get(i), targetDirectories.get(i), EntrySelector.all());
+            written.bytes += result.writtenBytes;
+            written.entries += result.extractedEntries;
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Written {
+        public long bytes;
+        public long entries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            entries = 0;
+        }
+    }
+}
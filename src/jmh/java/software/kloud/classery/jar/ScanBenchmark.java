@@ -0,0 +1,106 @@
+package software.kloud.classery.jar;
+
+import org.openjdk.jmh.annotations.*;
+import software.kloud.classery.benchmark.SyntheticPlugins;
+import software.kloud.classery.concurrent.ClasseryExecutors;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JarFileScanner#scan(JarFileScanner.ScanMode)} into an empty base directory (cold)
+ * and again over jars that did not change (warm)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Benchmark
+    public void scanCold(ColdScan state) throws IOException, JarUnpackingException {
+        state.scanner.scan(JarFileScanner.ScanMode.SKIP_ALREADY_SCANNED);
+    }
+
+    @Benchmark
+    public void scanWarm(WarmScan state) throws IOException, JarUnpackingException {
+        state.scanner.scan(JarFileScanner.ScanMode.SKIP_ALREADY_SCANNED);
+    }
+
+    @State(Scope.Thread)
+    public static class ColdScan {
+        @Param({"small", "huge", "fat"})
+        public String plugins;
+        @Param({"EXTRACT", "IN_PLACE"})
+        public JarFileScanner.UnpackMode unpackMode;
+        private File pluginDirectory;
+        private ClasseryExecutors executors;
+        private File baseDirectory;
+        private JarFileScanner scanner;
+
+        @Setup(Level.Trial)
+        public void setUpTrial() throws IOException {
+            pluginDirectory = SyntheticPlugins.getPluginDirectory(plugins);
+            executors = new ClasseryExecutors();
+        }
+
+        @Setup(Level.Invocation)
+        public void setUp() throws IOException {
+            baseDirectory = Files.createTempDirectory("classery-bench").toFile();
+            scanner = createScanner(baseDirectory, pluginDirectory, unpackMode, executors);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            scanner.close();
+            SyntheticPlugins.deleteRecursively(baseDirectory);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDownTrial() {
+            executors.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class WarmScan {
+        @Param({"small", "huge", "fat"})
+        public String plugins;
+        @Param({"EXTRACT", "IN_PLACE"})
+        public JarFileScanner.UnpackMode unpackMode;
+        private ClasseryExecutors executors;
+        private File baseDirectory;
+        private JarFileScanner scanner;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException, JarUnpackingException {
+            executors = new ClasseryExecutors();
+            baseDirectory = Files.createTempDirectory("classery-bench").toFile();
+            scanner = createScanner(baseDirectory, SyntheticPlugins.getPluginDirectory(plugins), unpackMode, executors);
+            scanner.scan(JarFileScanner.ScanMode.SKIP_ALREADY_SCANNED);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            scanner.close();
+            executors.close();
+            SyntheticPlugins.deleteRecursively(baseDirectory);
+        }
+    }
+
+    static JarFileScanner createScanner(
+            File baseDirectory,
+            File pluginDirectory,
+            JarFileScanner.UnpackMode unpackMode,
+            ClasseryExecutors executors
+    ) throws IOException {
+        var scanner = new JarFileScanner(baseDirectory, executors);
+        scanner.setUnpackMode(unpackMode);
+        scanner.init();
+        scanner.addDirectory(pluginDirectory);
+        return scanner;
+    }
+}
@@ -0,0 +1,61 @@
+package software.kloud.classery.jar;
+
+import org.openjdk.jmh.annotations.*;
+import software.kloud.classery.benchmark.SyntheticPlugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading and storing the {@link ScanCache} of a scanned plugin set. IN_PLACE scans are cached,
+ * so every jar carries the locations of all its classes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanCacheBenchmark {
+    @Param({"small", "huge", "fat"})
+    public String plugins;
+    private File scannedDirectory;
+    private File storeDirectory;
+    private ScanCache scannedCache;
+    private ScanCache storeCache;
+    private Map<File, Set<JarStateHolder>> state;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, JarUnpackingException {
+        scannedDirectory = Files.createTempDirectory("classery-bench").toFile();
+        storeDirectory = Files.createTempDirectory("classery-bench").toFile();
+        try (var scanner = new JarFileScanner(scannedDirectory)) {
+            scanner.setUnpackMode(JarFileScanner.UnpackMode.IN_PLACE);
+            scanner.init();
+            scanner.addDirectory(SyntheticPlugins.getPluginDirectory(plugins));
+            scanner.scan(JarFileScanner.ScanMode.SKIP_ALREADY_SCANNED);
+        }
+        scannedCache = new ScanCache(scannedDirectory);
+        storeCache = new ScanCache(storeDirectory);
+        state = scannedCache.read();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticPlugins.deleteRecursively(scannedDirectory);
+        SyntheticPlugins.deleteRecursively(storeDirectory);
+    }
+
+    @Benchmark
+    public Map<File, Set<JarStateHolder>> load() throws IOException {
+        return scannedCache.read();
+    }
+
+    @Benchmark
+    public void store() throws IOException {
+        storeCache.compact(state);
+    }
+}
@@ -0,0 +1,64 @@
+package software.kloud.classery.jar;
+
+import org.openjdk.jmh.annotations.*;
+import software.kloud.classery.benchmark.SyntheticPlugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PackageAwareJarDirectoryTraverser#traverse()} over extracted jars. {@code deep} puts almost all classes into
+ * one package chain, comparing its {@code parallelism} results shows how well the traversal splits skewed trees
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TraverseBenchmark {
+    @Param({"deep", "huge"})
+    public String plugins;
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+    private final List<File> extractedJars = new ArrayList<>();
+    private File root;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        var pluginDirectory = SyntheticPlugins.getPluginDirectory(plugins);
+        var jarFiles = pluginDirectory.listFiles((dir, name) -> JarFileScanner.isJarFileName(name));
+        if (jarFiles == null) throw new IOException(String.format("Can not list %s", pluginDirectory));
+        root = Files.createTempDirectory("classery-bench").toFile();
+        var jarExtractor = new JarExtractor(null);
+        for (File jarFile : jarFiles) {
+            var target = Files.createDirectory(new File(root, jarFile.getName()).toPath());
+            try (var jar = ZipArchive.open(jarFile)) {
+                jarExtractor.extract(jar, target, EntrySelector.all());
+            }
+            extractedJars.add(target.toFile());
+        }
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pool.shutdownNow();
+        SyntheticPlugins.deleteRecursively(root);
+        extractedJars.clear();
+    }
+
+    @Benchmark
+    public int traverse() {
+        int found = 0;
+        for (File extractedJar : extractedJars) {
+            found += new PackageAwareJarDirectoryTraverser(extractedJar, pool).traverse().size();
+        }
+        return found;
+    }
+}
@@ -0,0 +1,68 @@
+package software.kloud.classery.loader;
+
+import org.openjdk.jmh.annotations.*;
+import software.kloud.classery.benchmark.SyntheticPlugins;
+import software.kloud.classery.concurrent.ClasseryExecutors;
+import software.kloud.classery.jar.JarFileScanner;
+import software.kloud.classery.jar.JarUnpackingException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ClasseryLoader#load()} with a warm scan cache, so mostly indexing, planning and defining gets measured.
+ * Every invocation uses a new loader, a loader defines each class only once. {@code PER_JAR} adds the child loader
+ * lookups of {@link ClasseryLoader.Isolation#PER_JAR}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadBenchmark {
+    @Param({"small", "huge", "fat"})
+    public String plugins;
+    @Param({"EXTRACT", "IN_PLACE"})
+    public JarFileScanner.UnpackMode unpackMode;
+    @Param({"SHARED", "PER_JAR"})
+    public ClasseryLoader.Isolation isolation;
+    private File pluginDirectory;
+    private File baseDirectory;
+    private ClasseryExecutors executors;
+    private ClasseryLoader loader;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException, JarUnpackingException {
+        pluginDirectory = SyntheticPlugins.getPluginDirectory(plugins);
+        baseDirectory = Files.createTempDirectory("classery-bench").toFile();
+        executors = new ClasseryExecutors();
+        try (var warmUp = new ClasseryLoader(baseDirectory, List.of(pluginDirectory), unpackMode, executors)) {
+            warmUp.index();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        loader = new ClasseryLoader(baseDirectory, List.of(pluginDirectory), unpackMode, executors);
+        loader.setIsolation(isolation);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        loader.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        executors.close();
+        SyntheticPlugins.deleteRecursively(baseDirectory);
+    }
+
+    @Benchmark
+    public List<Class<?>> load() throws IOException, JarUnpackingException, UnresolvedDependencyException {
+        return loader.load();
+    }
+}
@@ -0,0 +1,120 @@
+package software.kloud.classery.loader;
+
+import org.openjdk.jmh.annotations.*;
+import software.kloud.classery.benchmark.SyntheticPlugins;
+import software.kloud.classery.concurrent.ClasseryExecutors;
+import software.kloud.classery.jar.JarFileScanner;
+import software.kloud.classery.jar.JarUnpackingException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent {@link ClasseryLoader#loadClass(String)} from a growing number of threads.
+ * {@code lookup} only hits classes which are defined already, {@code define} starts every iteration with a fresh,
+ * only indexed loader so threads race on defining the same classes
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadClassContentionBenchmark {
+
+    @Benchmark
+    @Threads(1)
+    public Class<?> lookup1(Loaded state) throws ClassNotFoundException {
+        return state.loadRandomClass();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Class<?> lookup4(Loaded state) throws ClassNotFoundException {
+        return state.loadRandomClass();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Class<?> lookup16(Loaded state) throws ClassNotFoundException {
+        return state.loadRandomClass();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Class<?> define1(Indexed state) throws ClassNotFoundException {
+        return state.loadRandomClass();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Class<?> define4(Indexed state) throws ClassNotFoundException {
+        return state.loadRandomClass();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Class<?> define16(Indexed state) throws ClassNotFoundException {
+        return state.loadRandomClass();
+    }
+
+    /**
+     * Shared loader over the {@code small} plugin set, read in place
+     */
+    public abstract static class SharedLoader {
+        File pluginDirectory;
+        File baseDirectory;
+        ClasseryExecutors executors;
+        ClasseryLoader loader;
+        String[] classNames;
+
+        void setUpDirectories() throws IOException {
+            pluginDirectory = SyntheticPlugins.getPluginDirectory("small");
+            baseDirectory = Files.createTempDirectory("classery-bench").toFile();
+            executors = new ClasseryExecutors();
+        }
+
+        void createLoader() throws IOException, JarUnpackingException {
+            if (loader != null) loader.close();
+            loader = new ClasseryLoader(baseDirectory, List.of(pluginDirectory), JarFileScanner.UnpackMode.IN_PLACE, executors);
+            classNames = loader.index().toArray(new String[0]);
+        }
+
+        Class<?> loadRandomClass() throws ClassNotFoundException {
+            return loader.loadClass(classNames[ThreadLocalRandom.current().nextInt(classNames.length)]);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            loader.close();
+            executors.close();
+            SyntheticPlugins.deleteRecursively(baseDirectory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Loaded extends SharedLoader {
+        @Setup(Level.Trial)
+        public void setUp() throws IOException, JarUnpackingException, UnresolvedDependencyException {
+            setUpDirectories();
+            createLoader();
+            loader.load();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Indexed extends SharedLoader {
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            setUpDirectories();
+        }
+
+        @Setup(Level.Iteration)
+        public void replaceLoader() throws IOException, JarUnpackingException {
+            createLoader();
+        }
+    }
+}
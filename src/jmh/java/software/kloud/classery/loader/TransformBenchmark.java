@@ -0,0 +1,97 @@
+package software.kloud.classery.loader;
+
+import org.openjdk.jmh.annotations.*;
+import software.kloud.classery.benchmark.SyntheticPlugins;
+import software.kloud.classery.concurrent.ClasseryExecutors;
+import software.kloud.classery.jar.JarFileScanner;
+import software.kloud.classery.jar.JarUnpackingException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * {@link ClasseryLoader#load()} with a {@link ClassTransformer} standing in for expensive instrumentation.
+ * {@code cold} deletes the transformed classes before every invocation, {@code warm} serves them from the cache
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransformBenchmark {
+    private static final int TRANSFORM_ROUNDS = 64;
+    @Param({"small", "huge"})
+    public String plugins;
+    @Param({"cold", "warm"})
+    public String cache;
+    private File pluginDirectory;
+    private File baseDirectory;
+    private ClasseryExecutors executors;
+    private ClasseryLoader loader;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException, JarUnpackingException, UnresolvedDependencyException {
+        pluginDirectory = SyntheticPlugins.getPluginDirectory(plugins);
+        baseDirectory = Files.createTempDirectory("classery-bench").toFile();
+        executors = new ClasseryExecutors();
+        try (var warmUp = createLoader()) {
+            warmUp.load();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        if (cache.equals("cold")) {
+            SyntheticPlugins.deleteRecursively(new File(baseDirectory, "transformed"));
+        }
+        loader = createLoader();
+    }
+
+    private ClasseryLoader createLoader() throws IOException {
+        var created = new ClasseryLoader(baseDirectory, List.of(pluginDirectory), JarFileScanner.UnpackMode.IN_PLACE, executors);
+        created.addTransformer(new ChecksumTransformer());
+        return created;
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        loader.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        executors.close();
+        SyntheticPlugins.deleteRecursively(baseDirectory);
+    }
+
+    @Benchmark
+    public List<Class<?>> load() throws IOException, JarUnpackingException, UnresolvedDependencyException {
+        return loader.load();
+    }
+
+    /**
+     * Checksums the class file a few times and returns an unchanged copy
+     */
+    static class ChecksumTransformer implements ClassTransformer {
+        static volatile long sink;
+
+        @Override
+        public String getVersion() {
+            return "1";
+        }
+
+        @Override
+        public byte[] transform(String className, byte[] classFile) {
+            var crc = new CRC32();
+            for (int i = 0; i < TRANSFORM_ROUNDS; i++) {
+                crc.update(classFile);
+            }
+            sink = crc.getValue();
+            return classFile.clone();
+        }
+    }
+}
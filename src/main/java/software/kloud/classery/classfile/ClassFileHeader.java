@@ -0,0 +1,211 @@
+package software.kloud.classery.classfile;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Header of a class file: own name, super class and interfaces.
+ * Read straight from the bytes by walking the constant pool, the class does not get defined.
+ * see: https://docs.oracle.com/javase/specs/jvms/se11/html/jvms-4.html
+ */
+@SuppressWarnings("WeakerAccess")
+public class ClassFileHeader {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int ACC_MODULE = 0x8000;
+
+    private final String className;
+    private final String superClassName;
+    private final List<String> interfaceNames;
+    private final int accessFlags;
+
+    private ClassFileHeader(String className, String superClassName, List<String> interfaceNames, int accessFlags) {
+        this.className = className;
+        this.superClassName = superClassName;
+        this.interfaceNames = interfaceNames;
+        this.accessFlags = accessFlags;
+    }
+
+    /**
+     * Parses the header of the given class file
+     *
+     * @param classFile raw class file
+     * @return parsed header
+     * @throws IOException If the bytes are not a valid class file
+     */
+    public static ClassFileHeader read(byte[] classFile) throws IOException {
+        try {
+            var buf = ByteBuffer.wrap(classFile);
+            return read(ConstantPool.read(classFile, buf), buf);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt class file found", e);
+        }
+    }
+
+    /**
+     * Reads the header following the constant pool. Leaves {@code buf} positioned at fields_count
+     */
+    static ClassFileHeader read(ConstantPool constantPool, ByteBuffer buf) throws IOException {
+        int accessFlags = buf.getShort() & 0xFFFF;
+        int thisClass = buf.getShort() & 0xFFFF;
+        int superClass = buf.getShort() & 0xFFFF;
+        int interfacesCount = buf.getShort() & 0xFFFF;
+
+        List<String> interfaces = new ArrayList<>(interfacesCount);
+        for (int i = 0; i < interfacesCount; i++) {
+            interfaces.add(constantPool.getClassName(buf.getShort() & 0xFFFF));
+        }
+
+        return new ClassFileHeader(
+                constantPool.getClassName(thisClass),
+                superClass == 0 ? null : constantPool.getClassName(superClass),
+                Collections.unmodifiableList(interfaces),
+                accessFlags
+        );
+    }
+
+    /**
+     * @return Binary name of the class
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return Binary name of the super class, {@code null} for {@link Object} and module descriptors
+     */
+    public String getSuperClassName() {
+        return superClassName;
+    }
+
+    /**
+     * @return Binary names of all directly implemented interfaces
+     */
+    public List<String> getInterfaceNames() {
+        return interfaceNames;
+    }
+
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    public boolean isModuleDescriptor() {
+        return (accessFlags & ACC_MODULE) != 0;
+    }
+
+    /**
+     * Offsets into the constant pool of a class file. Strings are only decoded on access
+     */
+    static final class ConstantPool {
+        private static final int CONSTANT_UTF8 = 1;
+        private static final int CONSTANT_INTEGER = 3;
+        private static final int CONSTANT_FLOAT = 4;
+        private static final int CONSTANT_LONG = 5;
+        private static final int CONSTANT_DOUBLE = 6;
+        private static final int CONSTANT_CLASS = 7;
+        private static final int CONSTANT_STRING = 8;
+        private static final int CONSTANT_FIELDREF = 9;
+        private static final int CONSTANT_METHODREF = 10;
+        private static final int CONSTANT_INTERFACE_METHODREF = 11;
+        private static final int CONSTANT_NAME_AND_TYPE = 12;
+        private static final int CONSTANT_METHOD_HANDLE = 15;
+        private static final int CONSTANT_METHOD_TYPE = 16;
+        private static final int CONSTANT_DYNAMIC = 17;
+        private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+        private static final int CONSTANT_MODULE = 19;
+        private static final int CONSTANT_PACKAGE = 20;
+
+        private final byte[] classFile;
+        private final int[] offsets;
+        private final byte[] tags;
+
+        private ConstantPool(byte[] classFile, int[] offsets, byte[] tags) {
+            this.classFile = classFile;
+            this.offsets = offsets;
+            this.tags = tags;
+        }
+
+        /**
+         * Reads magic, version and constant pool. Leaves {@code buf} positioned at access_flags
+         */
+        static ConstantPool read(byte[] classFile, ByteBuffer buf) throws IOException {
+            if (buf.getInt() != MAGIC) {
+                throw new IOException("Corrupt class file found");
+            }
+            buf.getShort(); // minor_version
+            buf.getShort(); // major_version
+
+            int count = buf.getShort() & 0xFFFF;
+            int[] offsets = new int[count];
+            byte[] tags = new byte[count];
+            for (int i = 1; i < count; i++) {
+                int tag = buf.get();
+                tags[i] = (byte) tag;
+                offsets[i] = buf.position();
+                switch (tag) {
+                    case CONSTANT_UTF8:
+                        int length = buf.getShort() & 0xFFFF;
+                        buf.position(buf.position() + length);
+                        break;
+                    case CONSTANT_CLASS:
+                    case CONSTANT_STRING:
+                    case CONSTANT_METHOD_TYPE:
+                    case CONSTANT_MODULE:
+                    case CONSTANT_PACKAGE:
+                        buf.position(buf.position() + 2);
+                        break;
+                    case CONSTANT_METHOD_HANDLE:
+                        buf.position(buf.position() + 3);
+                        break;
+                    case CONSTANT_INTEGER:
+                    case CONSTANT_FLOAT:
+                    case CONSTANT_FIELDREF:
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                    case CONSTANT_NAME_AND_TYPE:
+                    case CONSTANT_DYNAMIC:
+                    case CONSTANT_INVOKE_DYNAMIC:
+                        buf.position(buf.position() + 4);
+                        break;
+                    case CONSTANT_LONG:
+                    case CONSTANT_DOUBLE:
+                        buf.position(buf.position() + 8);
+                        // 8 byte constants take up two slots
+                        i++;
+                        break;
+                    default:
+                        throw new IOException(String.format("Unknown constant pool tag %d at index %d", tag, i));
+                }
+            }
+            return new ConstantPool(classFile, offsets, tags);
+        }
+
+        String getUtf8(int index) throws IOException {
+            if (tags[index] != CONSTANT_UTF8) {
+                throw new IOException(String.format("Constant pool entry %d is not a Utf8 constant", index));
+            }
+            int offset = offsets[index];
+            int length = ((classFile[offset] & 0xFF) << 8) | (classFile[offset + 1] & 0xFF);
+            try (var in = new DataInputStream(new ByteArrayInputStream(classFile, offset, length + 2))) {
+                return in.readUTF();
+            }
+        }
+
+        /**
+         * @return Binary name of the CONSTANT_Class entry at {@code index}
+         */
+        String getClassName(int index) throws IOException {
+            if (tags[index] != CONSTANT_CLASS) {
+                throw new IOException(String.format("Constant pool entry %d is not a Class constant", index));
+            }
+            int offset = offsets[index];
+            int nameIndex = ((classFile[offset] & 0xFF) << 8) | (classFile[offset + 1] & 0xFF);
+            return getUtf8(nameIndex).replace('/', '.');
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package software.kloud.classery.classfile;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Lightweight descriptor of a class: name, super class, interfaces and class level annotations.
+ * Parsed straight from the class file bytes, the class does not get defined.
+ * Annotations of all retentions but {@code SOURCE} are found, since both
+ * {@code RuntimeVisibleAnnotations} and {@code RuntimeInvisibleAnnotations} are read
+ */
+@SuppressWarnings("WeakerAccess")
+public class ClassMetadata {
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+    private static final int ACC_ANNOTATION = 0x2000;
+    private static final int ACC_MODULE = 0x8000;
+
+    private final String className;
+    private final String superClassName;
+    private final List<String> interfaceNames;
+    private final List<String> annotationNames;
+    private final int accessFlags;
+
+    public ClassMetadata(
+            String className,
+            String superClassName,
+            List<String> interfaceNames,
+            List<String> annotationNames,
+            int accessFlags
+    ) {
+        this.className = Objects.requireNonNull(className);
+        this.superClassName = superClassName;
+        this.interfaceNames = List.copyOf(interfaceNames);
+        this.annotationNames = List.copyOf(annotationNames);
+        this.accessFlags = accessFlags;
+    }
+
+    /**
+     * Parses the given class file. Fields and methods are skipped without decoding them
+     *
+     * @param classFile raw class file
+     * @return parsed metadata
+     * @throws IOException If the bytes are not a valid class file
+     */
+    public static ClassMetadata read(byte[] classFile) throws IOException {
+        try {
+            var buf = ByteBuffer.wrap(classFile);
+            var constantPool = ClassFileHeader.ConstantPool.read(classFile, buf);
+            var header = ClassFileHeader.read(constantPool, buf);
+            skipMembers(buf); // fields
+            skipMembers(buf); // methods
+
+            List<String> annotationNames = new ArrayList<>();
+            int attributesCount = buf.getShort() & 0xFFFF;
+            for (int i = 0; i < attributesCount; i++) {
+                var attributeName = constantPool.getUtf8(buf.getShort() & 0xFFFF);
+                int length = buf.getInt();
+                int end = buf.position() + length;
+                if ("RuntimeVisibleAnnotations".equals(attributeName) || "RuntimeInvisibleAnnotations".equals(attributeName)) {
+                    readAnnotationNames(constantPool, buf, annotationNames);
+                }
+                buf.position(end);
+            }
+
+            return new ClassMetadata(
+                    header.getClassName(),
+                    header.getSuperClassName(),
+                    header.getInterfaceNames(),
+                    annotationNames,
+                    header.getAccessFlags()
+            );
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt class file found", e);
+        }
+    }
+
+    /**
+     * Writes this descriptor in the format read by {@link #readFrom(DataInput)}
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeUTF(className);
+        out.writeBoolean(superClassName != null);
+        if (superClassName != null) out.writeUTF(superClassName);
+        writeNames(out, interfaceNames);
+        writeNames(out, annotationNames);
+        out.writeInt(accessFlags);
+    }
+
+    public static ClassMetadata readFrom(DataInput in) throws IOException {
+        var className = in.readUTF();
+        var superClassName = in.readBoolean() ? in.readUTF() : null;
+        var interfaceNames = readNames(in);
+        var annotationNames = readNames(in);
+        return new ClassMetadata(className, superClassName, interfaceNames, annotationNames, in.readInt());
+    }
+
+    /**
+     * @return Binary name of the class
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return Binary name of the super class, {@code null} for {@link Object} and module descriptors
+     */
+    public String getSuperClassName() {
+        return superClassName;
+    }
+
+    /**
+     * @return Binary names of all directly implemented interfaces
+     */
+    public List<String> getInterfaceNames() {
+        return interfaceNames;
+    }
+
+    /**
+     * @return Binary names of all annotations directly present on the class
+     */
+    public List<String> getAnnotationNames() {
+        return annotationNames;
+    }
+
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    public boolean isAnnotatedWith(String annotationName) {
+        return annotationNames.contains(annotationName);
+    }
+
+    public boolean isInterface() {
+        return (accessFlags & ACC_INTERFACE) != 0;
+    }
+
+    public boolean isAnnotation() {
+        return (accessFlags & ACC_ANNOTATION) != 0;
+    }
+
+    /**
+     * @return true for interfaces and abstract classes
+     */
+    public boolean isAbstract() {
+        return (accessFlags & ACC_ABSTRACT) != 0;
+    }
+
+    public boolean isModuleDescriptor() {
+        return (accessFlags & ACC_MODULE) != 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ClassMetadata that = (ClassMetadata) o;
+        return accessFlags == that.accessFlags &&
+                className.equals(that.className) &&
+                Objects.equals(superClassName, that.superClassName) &&
+                interfaceNames.equals(that.interfaceNames) &&
+                annotationNames.equals(that.annotationNames);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(className, superClassName, interfaceNames, annotationNames, accessFlags);
+    }
+
+    @Override
+    public String toString() {
+        return className;
+    }
+
+    private static void skipMembers(ByteBuffer buf) {
+        int count = buf.getShort() & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            buf.position(buf.position() + 6); // access_flags, name_index, descriptor_index
+            int attributesCount = buf.getShort() & 0xFFFF;
+            for (int j = 0; j < attributesCount; j++) {
+                buf.getShort(); // attribute_name_index
+                int length = buf.getInt();
+                buf.position(buf.position() + length);
+            }
+        }
+    }
+
+    private static void readAnnotationNames(ClassFileHeader.ConstantPool constantPool, ByteBuffer buf, List<String> names)
+            throws IOException {
+        int count = buf.getShort() & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            names.add(getTypeName(constantPool.getUtf8(buf.getShort() & 0xFFFF)));
+            skipElementValuePairs(buf);
+        }
+    }
+
+    private static void skipElementValuePairs(ByteBuffer buf) {
+        int pairs = buf.getShort() & 0xFFFF;
+        for (int i = 0; i < pairs; i++) {
+            buf.getShort(); // element_name_index
+            skipElementValue(buf);
+        }
+    }
+
+    private static void skipElementValue(ByteBuffer buf) {
+        int tag = buf.get();
+        switch (tag) {
+            case 'e':
+                buf.position(buf.position() + 4);
+                break;
+            case '@':
+                buf.getShort(); // type_index
+                skipElementValuePairs(buf);
+                break;
+            case '[':
+                int values = buf.getShort() & 0xFFFF;
+                for (int i = 0; i < values; i++) {
+                    skipElementValue(buf);
+                }
+                break;
+            default:
+                // Constants and class literals are a single constant pool index
+                buf.position(buf.position() + 2);
+        }
+    }
+
+    /**
+     * @return Binary name from a field descriptor like {@code Lcom/acme/Plugin;}
+     */
+    private static String getTypeName(String descriptor) throws IOException {
+        if (descriptor.length() < 3 || descriptor.charAt(0) != 'L' || descriptor.charAt(descriptor.length() - 1) != ';') {
+            throw new IOException(String.format("Unexpected annotation descriptor %s", descriptor));
+        }
+        return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+    }
+
+    private static void writeNames(DataOutput out, List<String> names) throws IOException {
+        out.writeShort(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    private static List<String> readNames(DataInput in) throws IOException {
+        int count = in.readUnsignedShort();
+        if (count == 0) return Collections.emptyList();
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(in.readUTF());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,119 @@
+package software.kloud.classery.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads shared by a {@link software.kloud.classery.jar.JarFileScanner}, its traversers and a
+ * {@link software.kloud.classery.loader.ClasseryLoader}.
+ * <p>
+ * I/O bound work (listing, hashing, extracting) runs on {@link #getIoExecutor()}, either a fixed pool of daemon threads or,
+ * on runtimes which support them, virtual threads. CPU bound work (traversing, parsing, defining) runs on
+ * {@link #getCpuPool()}, a fork join pool sized to the available cores. The number of threads therefore stays the same
+ * no matter how many jars get loaded. Closing shuts both down
+ */
+@SuppressWarnings("WeakerAccess")
+public class ClasseryExecutors implements AutoCloseable {
+    public static final int DEFAULT_IO_THREADS = 4;
+    /**
+     * A publishing scan occupies one I/O thread while it waits for the jars it submitted to the others
+     */
+    public static final int MIN_IO_THREADS = 2;
+    private static final Logger logger = LoggerFactory.getLogger(ClasseryExecutors.class);
+    private final ExecutorService ioExecutor;
+    private final ForkJoinPool cpuPool;
+    private final boolean virtualThreads;
+
+    /**
+     * Creates {@link #DEFAULT_IO_THREADS} platform I/O threads
+     */
+    public ClasseryExecutors() {
+        this(DEFAULT_IO_THREADS);
+    }
+
+    /**
+     * @param ioThreads number of platform threads for I/O bound work, at least {@link #MIN_IO_THREADS}
+     */
+    public ClasseryExecutors(int ioThreads) {
+        this(Executors.newFixedThreadPool(Math.max(ioThreads, MIN_IO_THREADS), new NamedDaemonThreadFactory("classery-io")), false);
+    }
+
+    private ClasseryExecutors(ExecutorService ioExecutor, boolean virtualThreads) {
+        this.ioExecutor = ioExecutor;
+        this.virtualThreads = virtualThreads;
+        this.cpuPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Runs I/O bound work on one virtual thread per task.
+     * Falls back to {@link #DEFAULT_IO_THREADS} platform threads if the runtime does not support virtual threads
+     *
+     * @return new executors, to be closed by the caller
+     */
+    public static ClasseryExecutors withVirtualThreads() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return new ClasseryExecutors((ExecutorService) factory.invoke(null), true);
+        } catch (ReflectiveOperationException e) {
+            logger.info("Virtual threads are not supported by this runtime, using platform threads for I/O");
+            return new ClasseryExecutors();
+        }
+    }
+
+    public ExecutorService getIoExecutor() {
+        return ioExecutor;
+    }
+
+    public ForkJoinPool getCpuPool() {
+        return cpuPool;
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Stops accepting new work and waits briefly for running tasks to finish
+     */
+    @Override
+    public void close() {
+        ioExecutor.shutdown();
+        cpuPool.shutdown();
+        try {
+            if (!ioExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                ioExecutor.shutdownNow();
+            }
+            if (!cpuPool.awaitTermination(10, TimeUnit.SECONDS)) {
+                cpuPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            ioExecutor.shutdownNow();
+            cpuPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class NamedDaemonThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger(0);
+
+        NamedDaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            var thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
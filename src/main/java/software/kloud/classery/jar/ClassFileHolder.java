@@ -5,24 +5,77 @@ import java.util.Objects;
 
 public class ClassFileHolder {
     /**
-     * File descriptor pointing to the .class file on the file system
+     * File descriptor pointing to the .class file on the file system,
+     * or to the jar containing it if {@link #entryName} is set
      */
     private File classFile;
+    /**
+     * Name of the jar entry holding the class, {@code null} if the class was unpacked to disk.
+     * Classes of nested jars are named like {@code BOOT-INF/lib/a.jar!/b/C.class}
+     */
+    private String entryName;
     /**
      * Fully qualified class name in Binary format, consisting of package and class name
      * see: https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html
      */
     private String absoluteClassName;
+    /**
+     * Jar an unpacked class was extracted from, {@code null} if unknown. Archived classes use {@link #classFile}
+     */
+    private File jarFile;
 
     public ClassFileHolder(File classFile, String absoluteClassName) {
         this.classFile = classFile;
         this.absoluteClassName = absoluteClassName;
     }
 
+    private ClassFileHolder(File classFile, String entryName, String absoluteClassName, File jarFile) {
+        this.classFile = classFile;
+        this.entryName = entryName;
+        this.absoluteClassName = absoluteClassName;
+        this.jarFile = jarFile;
+    }
+
+    /**
+     * @param classFile         unpacked .class file
+     * @param absoluteClassName binary class name
+     * @param jarFile           jar the class was extracted from
+     */
+    public static ClassFileHolder extracted(File classFile, String absoluteClassName, File jarFile) {
+        return new ClassFileHolder(classFile, null, absoluteClassName, jarFile);
+    }
+
+    /**
+     * @param jarFile           jar holding the class
+     * @param entryName         name of the jar entry holding the class
+     * @param absoluteClassName binary class name
+     */
+    public static ClassFileHolder archived(File jarFile, String entryName, String absoluteClassName) {
+        return new ClassFileHolder(jarFile, entryName, absoluteClassName, null);
+    }
+
     public File getClassFile() {
         return classFile;
     }
 
+    public String getEntryName() {
+        return entryName;
+    }
+
+    /**
+     * @return true if the class still lives inside its jar and has to be read via {@link #getEntryName()}
+     */
+    public boolean isArchived() {
+        return entryName != null;
+    }
+
+    /**
+     * @return Jar the class belongs to, {@code null} if it was unpacked from an unknown jar
+     */
+    public File getJarFile() {
+        return isArchived() ? classFile : jarFile;
+    }
+
     public String getAbsoluteClassName() {
         return absoluteClassName;
     }
@@ -33,11 +86,12 @@ public class ClassFileHolder {
         if (o == null || getClass() != o.getClass()) return false;
         ClassFileHolder that = (ClassFileHolder) o;
         return Objects.equals(classFile, that.classFile) &&
+                Objects.equals(entryName, that.entryName) &&
                 Objects.equals(absoluteClassName, that.absoluteClassName);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(classFile, absoluteClassName);
+        return Objects.hash(classFile, entryName, absoluteClassName);
     }
 }
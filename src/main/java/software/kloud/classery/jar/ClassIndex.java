@@ -0,0 +1,224 @@
+package software.kloud.classery.jar;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Index of class locations organized as a package trie.
+ * <p>
+ * Every package segment is a node shared by all classes and sub packages below it, so package names are stored once
+ * instead of once per class. Looking up a class walks one node per package segment, package queries only visit the
+ * requested sub tree. Classes found more than once, e.g. in two jars, are all kept, the first one added wins lookups.
+ * All methods are thread safe
+ */
+@SuppressWarnings("WeakerAccess")
+public class ClassIndex {
+    private final PackageNode root = new PackageNode();
+    private final Set<String> conflictingClassNames = new HashSet<>();
+    private int size = 0;
+
+    /**
+     * Adds a class location
+     *
+     * @param jarFile         jar the class was found in, {@code null} if it does not come from a jar
+     * @param classFileHolder location of the class
+     */
+    public synchronized void add(File jarFile, ClassFileHolder classFileHolder) {
+        var className = classFileHolder.getAbsoluteClassName();
+        int simpleNameStart = className.lastIndexOf('.') + 1;
+        var node = root;
+        int segmentStart = 0;
+        while (segmentStart < simpleNameStart) {
+            int segmentEnd = className.indexOf('.', segmentStart);
+            node = node.getOrCreateChild(className.substring(segmentStart, segmentEnd));
+            segmentStart = segmentEnd + 1;
+        }
+        if (node.classes == null) node.classes = new HashMap<>(4);
+
+        var entry = new Entry(jarFile, classFileHolder);
+        var first = node.classes.putIfAbsent(className, entry);
+        if (first == null) {
+            size++;
+            return;
+        }
+        if (first.isSameAs(entry)) return;
+        var last = first;
+        while (last.next != null) {
+            if (last.next.isSameAs(entry)) return;
+            last = last.next;
+        }
+        last.next = entry;
+        conflictingClassNames.add(className);
+    }
+
+    public synchronized void addAll(File jarFile, Collection<ClassFileHolder> classFileHolders) {
+        for (ClassFileHolder classFileHolder : classFileHolders) {
+            add(jarFile, classFileHolder);
+        }
+    }
+
+    /**
+     * @param className binary class name, e.g. {@code a.b.C$D}
+     * @return Location of the class, the first one added if it was found more than once
+     */
+    public synchronized Optional<ClassFileHolder> get(String className) {
+        var entry = findEntry(className);
+        return entry == null ? Optional.empty() : Optional.of(entry.classFileHolder);
+    }
+
+    /**
+     * @param className binary class name
+     * @return Jar defining the class, empty if the class is unknown or was not found in a jar
+     */
+    public synchronized Optional<File> findJar(String className) {
+        var entry = findEntry(className);
+        return entry == null ? Optional.empty() : Optional.ofNullable(entry.jarFile);
+    }
+
+    /**
+     * @param packageName package name, the empty string for the default package
+     * @return All classes directly inside the package, sorted by name
+     */
+    public synchronized List<ClassFileHolder> getClassesInPackage(String packageName) {
+        var node = findPackage(packageName);
+        List<ClassFileHolder> found = new ArrayList<>();
+        if (node != null && node.classes != null) {
+            for (Entry entry : node.classes.values()) {
+                found.add(entry.classFileHolder);
+            }
+        }
+        found.sort(Comparator.comparing(ClassFileHolder::getAbsoluteClassName));
+        return found;
+    }
+
+    /**
+     * @param packageName package name, the empty string for all classes
+     * @return All classes inside the package and its sub packages, sorted by name
+     */
+    public synchronized List<ClassFileHolder> getClassesUnderPackage(String packageName) {
+        var node = findPackage(packageName);
+        List<ClassFileHolder> found = new ArrayList<>();
+        if (node != null) collect(node, found);
+        found.sort(Comparator.comparing(ClassFileHolder::getAbsoluteClassName));
+        return found;
+    }
+
+    /**
+     * Finds classes by the start of their binary name. {@code a.b.Fo} finds {@code a.b.Foo} as well as
+     * everything in package {@code a.b.format}
+     *
+     * @param prefix start of a binary class name
+     * @return All matching classes, sorted by name
+     */
+    public synchronized List<ClassFileHolder> getClassesByPrefix(String prefix) {
+        int lastDot = prefix.lastIndexOf('.');
+        var node = lastDot < 0 ? root : findPackage(prefix.substring(0, lastDot));
+        var namePrefix = prefix.substring(lastDot + 1);
+        List<ClassFileHolder> found = new ArrayList<>();
+        if (node == null) return found;
+
+        if (node.classes != null) {
+            for (Map.Entry<String, Entry> entry : node.classes.entrySet()) {
+                if (entry.getKey().startsWith(namePrefix, lastDot + 1)) found.add(entry.getValue().classFileHolder);
+            }
+        }
+        if (node.children != null) {
+            for (Map.Entry<String, PackageNode> child : node.children.entrySet()) {
+                if (child.getKey().startsWith(namePrefix)) collect(child.getValue(), found);
+            }
+        }
+        found.sort(Comparator.comparing(ClassFileHolder::getAbsoluteClassName));
+        return found;
+    }
+
+    /**
+     * @return Jars by class name, for every class that was found in more than one jar or location.
+     * Jars are in the order they were added, the first one wins lookups
+     */
+    public synchronized Map<String, List<File>> getConflicts() {
+        Map<String, List<File>> conflicts = new TreeMap<>();
+        for (String className : conflictingClassNames) {
+            List<File> jarFiles = new ArrayList<>();
+            for (var entry = findEntry(className); entry != null; entry = entry.next) {
+                jarFiles.add(entry.jarFile);
+            }
+            conflicts.put(className, jarFiles);
+        }
+        return conflicts;
+    }
+
+    public synchronized boolean contains(String className) {
+        return findEntry(className) != null;
+    }
+
+    /**
+     * @return Number of distinct class names
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private Entry findEntry(String className) {
+        int lastDot = className.lastIndexOf('.');
+        var node = lastDot < 0 ? root : findPackage(className.substring(0, lastDot));
+        if (node == null || node.classes == null) return null;
+        return node.classes.get(className);
+    }
+
+    private PackageNode findPackage(String packageName) {
+        var node = root;
+        int segmentStart = 0;
+        while (node != null && segmentStart < packageName.length()) {
+            int segmentEnd = packageName.indexOf('.', segmentStart);
+            if (segmentEnd < 0) segmentEnd = packageName.length();
+            node = node.children == null ? null : node.children.get(packageName.substring(segmentStart, segmentEnd));
+            segmentStart = segmentEnd + 1;
+        }
+        return node;
+    }
+
+    private static void collect(PackageNode node, List<ClassFileHolder> found) {
+        if (node.classes != null) {
+            for (Entry entry : node.classes.values()) {
+                found.add(entry.classFileHolder);
+            }
+        }
+        if (node.children != null) {
+            for (PackageNode child : node.children.values()) {
+                collect(child, found);
+            }
+        }
+    }
+
+    /**
+     * One package segment. Both maps are only created once needed, most packages hold either classes or sub packages.
+     * Classes are keyed by their full binary name, which is the string the {@link ClassFileHolder} holds anyway
+     */
+    private static final class PackageNode {
+        private Map<String, PackageNode> children;
+        private Map<String, Entry> classes;
+
+        PackageNode getOrCreateChild(String segment) {
+            if (children == null) children = new HashMap<>(4);
+            return children.computeIfAbsent(segment, k -> new PackageNode());
+        }
+    }
+
+    /**
+     * Location of a class. Further locations of the same class name are chained through {@link #next}
+     */
+    private static final class Entry {
+        private final File jarFile;
+        private final ClassFileHolder classFileHolder;
+        private Entry next;
+
+        Entry(File jarFile, ClassFileHolder classFileHolder) {
+            this.jarFile = jarFile;
+            this.classFileHolder = classFileHolder;
+        }
+
+        boolean isSameAs(Entry other) {
+            return Objects.equals(jarFile, other.jarFile) && classFileHolder.equals(other.classFileHolder);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package software.kloud.classery.jar;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Selects which jar entries get extracted, indexed and defined.
+ * <p>
+ * Package globs are matched against the package of an entry, e.g. {@code com.acme.**} or {@code com.*.api}.
+ * Path globs are matched against the full entry name, e.g. {@code **&#47;test/**}. Classes of nested jars are named
+ * {@code BOOT-INF/lib/a.jar!/b/C.class}, their package is taken from the part after {@code !/}. In both {@code *} matches within
+ * a single segment and {@code **} matches any number of segments. An entry is selected if it has a selected
+ * {@link EntryType}, matches at least one include (if any are given) and no exclude.
+ * <p>
+ * Selectors are immutable, every {@code include*} or {@code exclude*} call returns a new one.
+ * {@link #getKey()} is stored with every scanned jar, changing the selector rescans all jars
+ */
+@SuppressWarnings("WeakerAccess")
+public final class EntrySelector {
+    private static final EntrySelector ALL = new EntrySelector(
+            List.of(), List.of(), List.of(), List.of(), EnumSet.allOf(EntryType.class));
+    private final List<String> includedPackages;
+    private final List<String> excludedPackages;
+    private final List<String> includedPaths;
+    private final List<String> excludedPaths;
+    private final Set<EntryType> entryTypes;
+    private final List<Pattern> includedPackagePatterns;
+    private final List<Pattern> excludedPackagePatterns;
+    private final List<Pattern> includedPathPatterns;
+    private final List<Pattern> excludedPathPatterns;
+    private final String key;
+
+    private EntrySelector(
+            List<String> includedPackages,
+            List<String> excludedPackages,
+            List<String> includedPaths,
+            List<String> excludedPaths,
+            Set<EntryType> entryTypes
+    ) {
+        this.includedPackages = includedPackages;
+        this.excludedPackages = excludedPackages;
+        this.includedPaths = includedPaths;
+        this.excludedPaths = excludedPaths;
+        this.entryTypes = Collections.unmodifiableSet(EnumSet.copyOf(entryTypes));
+        this.includedPackagePatterns = compileAll(includedPackages, '.');
+        this.excludedPackagePatterns = compileAll(excludedPackages, '.');
+        this.includedPathPatterns = compileAll(includedPaths, '/');
+        this.excludedPathPatterns = compileAll(excludedPaths, '/');
+        // Globs only ever need to match once, so the key ignores their order and duplicates
+        this.key = String.format("packages+%s packages-%s paths+%s paths-%s types%s",
+                new TreeSet<>(includedPackages), new TreeSet<>(excludedPackages),
+                new TreeSet<>(includedPaths), new TreeSet<>(excludedPaths), this.entryTypes);
+    }
+
+    /**
+     * @return Selector accepting every entry
+     */
+    public static EntrySelector all() {
+        return ALL;
+    }
+
+    public EntrySelector includePackages(String... packageGlobs) {
+        return new EntrySelector(concat(includedPackages, packageGlobs), excludedPackages, includedPaths, excludedPaths, entryTypes);
+    }
+
+    public EntrySelector excludePackages(String... packageGlobs) {
+        return new EntrySelector(includedPackages, concat(excludedPackages, packageGlobs), includedPaths, excludedPaths, entryTypes);
+    }
+
+    public EntrySelector includePaths(String... pathGlobs) {
+        return new EntrySelector(includedPackages, excludedPackages, concat(includedPaths, pathGlobs), excludedPaths, entryTypes);
+    }
+
+    public EntrySelector excludePaths(String... pathGlobs) {
+        return new EntrySelector(includedPackages, excludedPackages, includedPaths, concat(excludedPaths, pathGlobs), entryTypes);
+    }
+
+    /**
+     * @param entryType  first type to keep
+     * @param entryTypes further types to keep
+     * @return Selector keeping only entries of the given types
+     */
+    public EntrySelector onlyEntryTypes(EntryType entryType, EntryType... entryTypes) {
+        return new EntrySelector(includedPackages, excludedPackages, includedPaths, excludedPaths, EnumSet.of(entryType, entryTypes));
+    }
+
+    /**
+     * @return true if every entry gets selected, which allows skipping the check entirely
+     */
+    public boolean isAll() {
+        return key.equals(ALL.key);
+    }
+
+    /**
+     * @param entryName '/' separated name of a file entry, relative to the jar root
+     * @return true if the entry should be extracted and indexed
+     */
+    public boolean isSelected(String entryName) {
+        var entryType = entryName.endsWith(".class") ? EntryType.CLASS : EntryType.RESOURCE;
+        if (!entryTypes.contains(entryType)) return false;
+
+        if (!includedPathPatterns.isEmpty() && noneMatches(includedPathPatterns, entryName)) return false;
+        if (!noneMatches(excludedPathPatterns, entryName)) return false;
+
+        if (includedPackagePatterns.isEmpty() && excludedPackagePatterns.isEmpty()) return true;
+        var packageName = getPackageName(entryName);
+        if (!includedPackagePatterns.isEmpty() && noneMatches(includedPackagePatterns, packageName)) return false;
+        return noneMatches(excludedPackagePatterns, packageName);
+    }
+
+    /**
+     * @return Canonical description of this selector, equal for selectors selecting the same entries by the same rules
+     */
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof EntrySelector)) return false;
+        return key.equals(((EntrySelector) o).key);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+
+    private static String getPackageName(String entryName) {
+        int nestedEntryStart = entryName.lastIndexOf(ZipArchive.NESTED_SEPARATOR);
+        var innerEntryName = nestedEntryStart < 0 ? entryName : entryName.substring(nestedEntryStart + ZipArchive.NESTED_SEPARATOR.length());
+        var relativePath = PackageAwareJarDirectoryTraverser.stripCommonJarDirectories(innerEntryName);
+        int lastSlash = relativePath.lastIndexOf('/');
+        return lastSlash < 0 ? "" : relativePath.substring(0, lastSlash).replace('/', '.');
+    }
+
+    private static boolean noneMatches(List<Pattern> patterns, String value) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(value).matches()) return false;
+        }
+        return true;
+    }
+
+    private static List<String> concat(List<String> globs, String[] additionalGlobs) {
+        List<String> res = new ArrayList<>(globs);
+        for (String glob : additionalGlobs) {
+            res.add(Objects.requireNonNull(glob));
+        }
+        return Collections.unmodifiableList(res);
+    }
+
+    private static List<Pattern> compileAll(List<String> globs, char separator) {
+        List<Pattern> patterns = new ArrayList<>(globs.size());
+        for (String glob : globs) {
+            patterns.add(compile(glob, separator));
+        }
+        return patterns;
+    }
+
+    /**
+     * Translates a glob into a regex. {@code **} spans segments, a leading {@code **&#47;} and a trailing
+     * {@code /**} also match zero segments, so {@code com.acme.**} matches {@code com.acme} itself
+     */
+    static Pattern compile(String glob, char separator) {
+        var quotedSeparator = Pattern.quote(String.valueOf(separator));
+        var segmentChar = "[^" + (separator == '.' ? "." : "/") + "]";
+        var regex = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i);
+            boolean isDoubleStar = c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*';
+            if (c == separator && glob.startsWith("**", i + 1) && i + 3 == glob.length()) {
+                regex.append("(?:").append(quotedSeparator).append(".*)?");
+                i += 3;
+            } else if (isDoubleStar && (i == 0 || glob.charAt(i - 1) == separator)
+                    && i + 2 < glob.length() && glob.charAt(i + 2) == separator) {
+                regex.append("(?:.*").append(quotedSeparator).append(")?");
+                i += 3;
+            } else if (isDoubleStar) {
+                regex.append(".*");
+                i += 2;
+            } else if (c == '*') {
+                regex.append(segmentChar).append('*');
+                i++;
+            } else if (c == '?') {
+                regex.append(segmentChar);
+                i++;
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+                i++;
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    public enum EntryType {
+        /**
+         * Entries ending with {@code .class}
+         */
+        CLASS,
+        /**
+         * Every other file entry
+         */
+        RESOURCE
+    }
+}
@@ -0,0 +1,145 @@
+package software.kloud.classery.jar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Traverses the entries of a jar for .class files and resources without unpacking it to disk.
+ * Counterpart of {@link PackageAwareJarDirectoryTraverser} for {@link JarFileScanner.UnpackMode#IN_PLACE}
+ */
+@SuppressWarnings("WeakerAccess")
+public class JarArchiveTraverser {
+    private final File jarFile;
+    private final EntrySelector entrySelector;
+
+    /**
+     * Create a new traverser for the given jar
+     *
+     * @param jarFile zipped jar to read entries from
+     */
+    public JarArchiveTraverser(File jarFile) {
+        this(jarFile, EntrySelector.all());
+    }
+
+    /**
+     * Create a new traverser for the given jar, only returning selected classes
+     *
+     * @param jarFile       zipped jar to read entries from
+     * @param entrySelector selector applied to every entry name
+     */
+    public JarArchiveTraverser(File jarFile, EntrySelector entrySelector) {
+        if (!jarFile.isFile()) {
+            throw new IllegalArgumentException("jarFile is not a file");
+        }
+        this.jarFile = jarFile;
+        this.entrySelector = Objects.requireNonNull(entrySelector);
+    }
+
+    /**
+     * Reads the central directory of the jar through a {@link ZipArchive}. Entry contents are not inflated.
+     *
+     * @return All found .class entries
+     * @throws IOException If the jar can not be opened
+     */
+    public List<ClassFileHolder> traverse() throws IOException {
+        List<ClassFileHolder> found = new ArrayList<>();
+        try (var jar = ZipArchive.open(jarFile)) {
+            for (Map.Entry<String, String> classEntry : indexClassEntries(jar, entrySelector).entrySet()) {
+                found.add(ClassFileHolder.archived(jarFile, classEntry.getValue(), classEntry.getKey()));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Lists the resources of the jar, see {@link #indexResourceEntries(ZipArchive, EntrySelector)}
+     *
+     * @return Entry names of all selected files which are not classes
+     * @throws IOException If the jar can not be opened
+     */
+    public List<String> traverseResources() throws IOException {
+        try (var jar = ZipArchive.open(jarFile)) {
+            return indexResourceEntries(jar, entrySelector);
+        }
+    }
+
+    /**
+     * Lists all selected .class entries of an opened jar, including those of nested library jars like
+     * {@code BOOT-INF/lib/a.jar}. Nested jars are read in memory, their classes are named
+     * {@code BOOT-INF/lib/a.jar!/b/C.class}, see {@link ZipArchive#NESTED_SEPARATOR}. Versioned classes of
+     * multi-release jars are skipped, see {@link PackageAwareJarDirectoryTraverser#isVersionedEntry(String)}.
+     * Only names of .class entries get decoded
+     *
+     * @param jar           opened jar
+     * @param entrySelector selector applied to every entry name
+     * @return Binary class name to entry name. The first entry wins if two map to the same name, classes of the jar
+     * itself win over those of nested jars
+     * @throws IOException If a nested jar can not be read
+     */
+    static Map<String, String> indexClassEntries(ZipArchive jar, EntrySelector entrySelector) throws IOException {
+        Map<String, String> classEntries = new HashMap<>();
+        List<String> nestedLibraries = new ArrayList<>();
+        for (int i = 0; i < jar.size(); i++) {
+            if (jar.nameEndsWith(i, ".jar")) {
+                var entryName = jar.getName(i);
+                if (ZipArchive.isNestedLibrary(entryName)) nestedLibraries.add(entryName);
+                continue;
+            }
+            if (!jar.nameEndsWith(i, ".class")) continue;
+            var entryName = jar.getName(i);
+            if (PackageAwareJarDirectoryTraverser.isVersionedEntry(entryName) || !entrySelector.isSelected(entryName)) continue;
+
+            classEntries.putIfAbsent(PackageAwareJarDirectoryTraverser.getBinaryClassNameFromRelativePath(entryName), entryName);
+        }
+
+        for (String nestedLibrary : nestedLibraries) {
+            try (var nested = jar.openNested(nestedLibrary)) {
+                for (int i = 0; i < nested.size(); i++) {
+                    if (!nested.nameEndsWith(i, ".class")) continue;
+                    var entryName = nested.getName(i);
+                    if (PackageAwareJarDirectoryTraverser.isVersionedEntry(entryName)) continue;
+                    var qualifiedEntryName = nestedLibrary + ZipArchive.NESTED_SEPARATOR + entryName;
+                    if (!entrySelector.isSelected(qualifiedEntryName)) continue;
+
+                    classEntries.putIfAbsent(PackageAwareJarDirectoryTraverser.getBinaryClassNameFromRelativePath(entryName), qualifiedEntryName);
+                }
+            }
+        }
+        return classEntries;
+    }
+
+    /**
+     * Lists all selected files of an opened jar and of its nested library jars which are neither classes nor
+     * nested library jars. Entries of nested jars are named like their classes, see {@link #indexClassEntries}
+     *
+     * @param jar           opened jar
+     * @param entrySelector selector applied to every entry name
+     * @return Entry names in central directory order, nested jars last
+     * @throws IOException If a nested jar can not be read
+     */
+    static List<String> indexResourceEntries(ZipArchive jar, EntrySelector entrySelector) throws IOException {
+        List<String> resourceEntries = new ArrayList<>();
+        List<String> nestedLibraries = new ArrayList<>();
+        for (int i = 0; i < jar.size(); i++) {
+            if (jar.isDirectory(i) || jar.nameEndsWith(i, ".class")) continue;
+            var entryName = jar.getName(i);
+            if (jar.nameEndsWith(i, ".jar") && ZipArchive.isNestedLibrary(entryName)) {
+                nestedLibraries.add(entryName);
+                continue;
+            }
+            if (entrySelector.isSelected(entryName)) resourceEntries.add(entryName);
+        }
+
+        for (String nestedLibrary : nestedLibraries) {
+            try (var nested = jar.openNested(nestedLibrary)) {
+                for (int i = 0; i < nested.size(); i++) {
+                    if (nested.isDirectory(i) || nested.nameEndsWith(i, ".class")) continue;
+                    var qualifiedEntryName = nestedLibrary + ZipArchive.NESTED_SEPARATOR + nested.getName(i);
+                    if (entrySelector.isSelected(qualifiedEntryName)) resourceEntries.add(qualifiedEntryName);
+                }
+            }
+        }
+        return resourceEntries;
+    }
+}
@@ -0,0 +1,52 @@
+package software.kloud.classery.jar;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Jars of a single plugin directory that changed during an incremental rescan
+ */
+@SuppressWarnings("WeakerAccess")
+public class JarChangeEvent {
+    private final File pluginDirectory;
+    private final Set<JarStateHolder> added;
+    private final Set<JarStateHolder> modified;
+    private final Set<JarStateHolder> removed;
+
+    public JarChangeEvent(File pluginDirectory, Set<JarStateHolder> added, Set<JarStateHolder> modified, Set<JarStateHolder> removed) {
+        this.pluginDirectory = pluginDirectory;
+        this.added = Collections.unmodifiableSet(added);
+        this.modified = Collections.unmodifiableSet(modified);
+        this.removed = Collections.unmodifiableSet(removed);
+    }
+
+    public File getPluginDirectory() {
+        return pluginDirectory;
+    }
+
+    /**
+     * @return Jars which were not known before
+     */
+    public Set<JarStateHolder> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return New state of jars whose content changed
+     */
+    public Set<JarStateHolder> getModified() {
+        return modified;
+    }
+
+    /**
+     * @return Last known state of jars which do not exist anymore
+     */
+    public Set<JarStateHolder> getRemoved() {
+        return removed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && modified.isEmpty() && removed.isEmpty();
+    }
+}
@@ -0,0 +1,14 @@
+package software.kloud.classery.jar;
+
+/**
+ * Gets notified by {@link JarDirectoryWatcher} after changed jars were processed
+ */
+@FunctionalInterface
+public interface JarChangeListener {
+    /**
+     * Called on the watcher thread. Never called with an empty event
+     *
+     * @param event changed jars of a single plugin directory
+     */
+    void onChange(JarChangeEvent event);
+}
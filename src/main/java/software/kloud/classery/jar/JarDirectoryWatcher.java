@@ -0,0 +1,159 @@
+package software.kloud.classery.jar;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the plugin directories of a {@link JarFileScanner} and rescans only the jars that got added, modified or removed.
+ * <p>
+ * File system events get collected until no new event arrived for the debounce interval, so a jar which is still being copied
+ * gets processed once. While nothing happens the watcher thread blocks without polling the file system.
+ * The scanner has to be scanned once before {@link #start()}
+ */
+@SuppressWarnings("WeakerAccess")
+public class JarDirectoryWatcher implements Closeable {
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+    private static final Logger logger = LoggerFactory.getLogger(JarDirectoryWatcher.class);
+    private final JarFileScanner jarFileScanner;
+    private final long debounceMillis;
+    private final List<JarChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<WatchKey, File> watchedDirectories = new HashMap<>();
+    private WatchService watchService;
+    private Thread watcherThread;
+
+    public JarDirectoryWatcher(JarFileScanner jarFileScanner) {
+        this(jarFileScanner, DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * @param jarFileScanner scanner whose plugin directories get watched
+     * @param debounceMillis quiet period after the last event before changed jars get processed
+     */
+    public JarDirectoryWatcher(JarFileScanner jarFileScanner, long debounceMillis) {
+        this.jarFileScanner = jarFileScanner;
+        this.debounceMillis = debounceMillis;
+    }
+
+    public void addListener(JarChangeListener listener) {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    public void removeListener(JarChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Registers all plugin directories and starts the watcher thread
+     *
+     * @throws IOException If a directory can not be watched
+     */
+    public synchronized void start() throws IOException {
+        if (watcherThread != null) {
+            throw new IllegalStateException("Watcher already started");
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        for (File directory : jarFileScanner.getPluginDirectories()) {
+            var key = directory.toPath().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.put(key, directory);
+        }
+
+        watcherThread = new Thread(this::watch, "classery-jar-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    private void watch() {
+        Map<File, Set<File>> pendingJars = new HashMap<>();
+        Set<File> overflowedDirectories = new HashSet<>();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                boolean hasPending = !pendingJars.isEmpty() || !overflowedDirectories.isEmpty();
+                WatchKey key = hasPending
+                        ? watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)
+                        : watchService.take();
+
+                if (key == null) {
+                    process(pendingJars, overflowedDirectories);
+                    pendingJars.clear();
+                    overflowedDirectories.clear();
+                    continue;
+                }
+
+                var directory = watchedDirectories.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflowedDirectories.add(directory);
+                        continue;
+                    }
+                    var name = event.context().toString();
+                    if (!JarFileScanner.isJarFileName(name)) continue;
+
+                    pendingJars.computeIfAbsent(directory, k -> new HashSet<>()).add(new File(directory, name));
+                }
+                if (!key.reset()) {
+                    logger.warn(String.format("Plugin directory %s is not accessible anymore, stopped watching it", directory));
+                    watchedDirectories.remove(key);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // close() was called
+        }
+    }
+
+    private void process(Map<File, Set<File>> pendingJars, Set<File> overflowedDirectories) {
+        for (File directory : overflowedDirectories) {
+            try {
+                notifyListeners(jarFileScanner.rescanDirectory(directory));
+            } catch (JarUnpackingException | IOException | RuntimeException e) {
+                logger.error(String.format("Failed to rescan plugin directory %s", directory), e);
+            }
+        }
+        for (Map.Entry<File, Set<File>> entry : pendingJars.entrySet()) {
+            if (overflowedDirectories.contains(entry.getKey())) continue;
+            try {
+                notifyListeners(jarFileScanner.rescan(entry.getKey(), entry.getValue()));
+            } catch (JarUnpackingException | IOException | RuntimeException e) {
+                logger.error(String.format("Failed to rescan changed jars in %s", entry.getKey()), e);
+            }
+        }
+    }
+
+    private void notifyListeners(JarChangeEvent event) {
+        if (event.isEmpty()) return;
+        for (JarChangeListener listener : listeners) {
+            try {
+                listener.onChange(event);
+            } catch (RuntimeException e) {
+                logger.error("Jar change listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Stops the watcher thread. Events which were not processed yet get dropped
+     *
+     * @throws IOException If the watch service can not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        if (watcherThread != null) {
+            watcherThread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package software.kloud.classery.jar;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Extracts all entries of a jar into a directory.
+ * <p>
+ * Reads through a {@link ZipArchive}: STORED entries are written straight from the memory mapped jar,
+ * DEFLATED entries are inflated through a reusable per thread buffer. Jars with more than {@link #PARALLEL_ENTRY_THRESHOLD} entries
+ * get split into chunks which are extracted by the calling thread and idle workers of the given executor
+ */
+class JarExtractor {
+    static final int PARALLEL_ENTRY_THRESHOLD = 2048;
+    private static final int CHUNK_SIZE = 512;
+    private static final Logger logger = LoggerFactory.getLogger(JarExtractor.class);
+    private final ExecutorService executor;
+
+    /**
+     * @param executor pool to borrow idle workers from for large jars, may be {@code null} to extract single threaded
+     */
+    JarExtractor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Extracts all selected entries of {@code jarFile} below {@code targetDirectory}, except nested library jars.
+     * Entries which are not selected are never inflated. Directory entries are only kept when everything is selected,
+     * otherwise directories get created for extracted files only
+     *
+     * @param jar             opened jar
+     * @param targetDirectory existing, empty directory
+     * @param entrySelector   selector applied to every file entry name
+     * @return Number of extracted file entries and bytes written
+     * @throws IOException If an entry could not be written or points outside of {@code targetDirectory}
+     */
+    ExtractionResult extract(ZipArchive jar, Path targetDirectory, EntrySelector entrySelector) throws IOException {
+        int[] selected = new int[jar.size()];
+        int selectedCount = 0;
+        boolean selectsAll = entrySelector.isAll();
+        for (int i = 0; i < jar.size(); i++) {
+            // Nested library jars are read straight from the jar, extracting them would only cost disk space
+            if (jar.nameEndsWith(i, ".jar") && ZipArchive.isNestedLibrary(jar.getName(i))) continue;
+            if (selectsAll || (!jar.isDirectory(i) && entrySelector.isSelected(jar.getName(i)))) {
+                selected[selectedCount++] = i;
+            }
+        }
+        int[] entries = Arrays.copyOf(selected, selectedCount);
+        var root = targetDirectory.toAbsolutePath().normalize();
+        var extractedEntries = new AtomicInteger(0);
+        var writtenBytes = new AtomicLong(0);
+
+        if (executor == null || entries.length <= PARALLEL_ENTRY_THRESHOLD) {
+            extractChunk(jar, root, entries, 0, entries.length, extractedEntries, writtenBytes);
+            return new ExtractionResult(extractedEntries.get(), writtenBytes.get());
+        }
+
+        // Directories first, so chunks never race on creating the same parent
+        for (int entry : entries) {
+            if (jar.isDirectory(entry)) Files.createDirectories(resolve(root, jar.getName(entry)));
+        }
+
+        int chunkCount = (entries.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        var nextChunk = new AtomicInteger(0);
+        Callable<Void> worker = () -> {
+            int chunk;
+            while ((chunk = nextChunk.getAndIncrement()) < chunkCount) {
+                int from = chunk * CHUNK_SIZE;
+                extractChunk(jar, root, entries, from, Math.min(from + CHUNK_SIZE, entries.length), extractedEntries, writtenBytes);
+            }
+            return null;
+        };
+
+        int helperCount = Math.min(chunkCount - 1, Runtime.getRuntime().availableProcessors());
+        List<Future<Void>> helpers = new ArrayList<>(helperCount);
+        List<AtomicBoolean> helperClaims = new ArrayList<>(helperCount);
+        for (int i = 0; i < helperCount; i++) {
+            var claim = new AtomicBoolean(false);
+            helperClaims.add(claim);
+            helpers.add(executor.submit(() -> claim.compareAndSet(false, true) ? worker.call() : null));
+        }
+
+        IOException failure = null;
+        try {
+            worker.call();
+        } catch (IOException e) {
+            failure = e;
+            nextChunk.set(chunkCount);
+        } catch (Exception e) {
+            failure = new IOException("Failed to extract jar", e);
+            nextChunk.set(chunkCount);
+        }
+
+        // Helpers that did not start yet are not needed anymore. Waiting on them could starve the pool
+        for (int i = 0; i < helperCount; i++) {
+            var helper = helpers.get(i);
+            if (helperClaims.get(i).compareAndSet(false, true)) {
+                helper.cancel(false);
+                continue;
+            }
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) failure = new IOException("Extraction was interrupted", e);
+            } catch (ExecutionException e) {
+                if (failure == null) failure = new IOException("Failed to extract jar", e.getCause());
+            }
+        }
+        if (failure != null) throw failure;
+
+        return new ExtractionResult(extractedEntries.get(), writtenBytes.get());
+    }
+
+    private void extractChunk(
+            ZipArchive jar,
+            Path root,
+            int[] entries,
+            int from,
+            int to,
+            AtomicInteger extractedEntries,
+            AtomicLong writtenBytes
+    ) throws IOException {
+        Path lastParent = null;
+        for (int i = from; i < to; i++) {
+            int entry = entries[i];
+            var destination = resolve(root, jar.getName(entry));
+            if (jar.isDirectory(entry)) {
+                Files.createDirectories(destination);
+                continue;
+            }
+
+            var parent = destination.getParent();
+            if (!parent.equals(lastParent)) {
+                Files.createDirectories(parent);
+                lastParent = parent;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Unzipping file {}", destination);
+            }
+            long written;
+            try (FileChannel channel = FileChannel.open(destination,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                written = jar.transferTo(entry, channel);
+            }
+            extractedEntries.incrementAndGet();
+            writtenBytes.addAndGet(written);
+        }
+    }
+
+    private Path resolve(Path root, String entryName) throws IOException {
+        var destination = root.resolve(entryName).normalize();
+        if (!destination.startsWith(root)) {
+            throw new IOException(String.format("Jar entry %s points outside of %s", entryName, root));
+        }
+        return destination;
+    }
+
+    static final class ExtractionResult {
+        final int extractedEntries;
+        final long writtenBytes;
+
+        ExtractionResult(int extractedEntries, long writtenBytes) {
+            this.extractedEntries = extractedEntries;
+            this.writtenBytes = writtenBytes;
+        }
+    }
+}
@@ -1,90 +1,157 @@
 package software.kloud.classery.jar;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import software.kloud.common.file.hash.FileHasher;
+import software.kloud.classery.concurrent.ClasseryExecutors;
+import software.kloud.classery.jar.fingerprint.JarFingerprinter;
+import software.kloud.classery.jar.fingerprint.Md5JarFingerprinter;
+import software.kloud.classery.metrics.CacheResult;
+import software.kloud.classery.metrics.Instrumentation;
+import software.kloud.classery.metrics.Phase;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-public class JarFileScanner {
+public class JarFileScanner implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(JarFileScanner.class);
-    private static final CacheTypeReference CACHE_TYPE = new CacheTypeReference();
-    private static final ObjectMapper objm = new ObjectMapper();
     private static int DEFAULT_THREAD_COUNT = 4;
+    /**
+     * Upper bound of jars being hashed or unpacked at the same time during a single scan
+     */
+    public static final int MAX_JARS_IN_FLIGHT = 32;
     private final List<File> pluginDirectories;
-    private final CompletionService<JarStateHolder> completionService;
-    private Map<File, Set<JarStateHolder>> jarFileTmpMap;
-    private Map<File, FileHasher> jarFileHasherMap;
-    private boolean hasScanned = false;
-    private Supplier<File> baseDirectory;
-    private boolean initialized = false;
-
-    // DEBUG fields
-    // Not part of public API
-    // Override this class in a test and call setDebug() to start recording these metrics
-    private boolean debug = false;
-    private AtomicInteger debugCountOfUnpackedJarEntries = new AtomicInteger(0);
-    private AtomicInteger debugCountOfUnpackedJarFiles = new AtomicInteger(0);
-    private AtomicInteger debugCountOfSkippedJarEntries = new AtomicInteger(0);
-    private AtomicInteger debugCountOfSkippedJarFiles = new AtomicInteger(0);
+    private final JarExtractor jarExtractor;
+    private final ClasseryExecutors executors;
+    private final boolean ownsExecutors;
+    // Scans and rescans are serialized on this, readers like streamAll() may run concurrently to them
+    private volatile Map<File, Set<JarStateHolder>> jarFileTmpMap;
+    private Map<File, Set<JarStateHolder>> persistedJarFileMap;
+    private ScanCache scanCache;
+    private final Map<File, JarStateHolder> jarsByPath = new ConcurrentHashMap<>();
+    private final Map<String, JarStateHolder> jarsByHash = new ConcurrentHashMap<>();
+    private volatile boolean hasScanned = false;
+    private volatile Supplier<File> baseDirectory;
+    private volatile boolean initialized = false;
+    private volatile UnpackMode unpackMode = UnpackMode.EXTRACT;
+    private volatile JarFingerprinter jarFingerprinter = new Md5JarFingerprinter();
+    private volatile EntrySelector entrySelector = EntrySelector.all();
+    private final Instrumentation instrumentation = new Instrumentation();
+    // Null until a scan extracts jars or finds trees of an earlier run
+    private volatile UnpackStore unpackStore;
 
     public JarFileScanner(File baseDir, int threadCount) throws IOException {
-        this.jarFileTmpMap = new HashMap<>();
-        this.jarFileHasherMap = new HashMap<>();
-        this.pluginDirectories = new ArrayList<>();
-        this.completionService = new ExecutorCompletionService<>(Executors.newFixedThreadPool(threadCount));
-        this.baseDirectory = () -> baseDir;
+        this(baseDir, new ClasseryExecutors(threadCount), true);
     }
 
     public JarFileScanner(File baseDir) throws IOException {
         this(baseDir, DEFAULT_THREAD_COUNT);
     }
 
-    private File getCacheFile() {
-        return new File(this.baseDirectory.get(), "plugins.cache");
+    /**
+     * Create a scanner running on shared executors. Closing the scanner does not close them
+     *
+     * @param baseDir   directory holding the cache and unpacked jars
+     * @param executors executors to run hashing and unpacking on
+     */
+    public JarFileScanner(File baseDir, ClasseryExecutors executors) throws IOException {
+        this(baseDir, executors, false);
+    }
+
+    private JarFileScanner(File baseDir, ClasseryExecutors executors, boolean ownsExecutors) {
+        this.jarFileTmpMap = new ConcurrentHashMap<>();
+        this.pluginDirectories = new CopyOnWriteArrayList<>();
+        this.executors = executors;
+        this.ownsExecutors = ownsExecutors;
+        this.jarExtractor = new JarExtractor(executors.getIoExecutor());
+        this.baseDirectory = () -> baseDir;
     }
 
-    public void init() throws IOException {
-        File cacheFile = getCacheFile();
-        if (!cacheFile.isFile()) {
-            if (!cacheFile.createNewFile()) {
-                logger.error("Could not create fresh cache file. Filesystem corrupt or not enough permissions?");
-                throw new IOException("Could not create fresh cache file. Filesystem corrupt or not enough permissions?");
-            }
-            initialized = true;
-            return;
-        }
-        if (cacheFile.length() == 0) {
-            initialized = true;
-            return;
+    /**
+     * Reads the binary scan cache from the base directory
+     *
+     * @throws IOException If the cache exists but can not be read
+     */
+    public synchronized void init() throws IOException {
+        this.scanCache = new ScanCache(this.baseDirectory.get());
+        this.jarFileTmpMap = new ConcurrentHashMap<>(scanCache.read());
+        this.unpackStore = openUnpackStore(false);
+        if (unpackStore != null) {
+            dropMissingTrees();
+            updateStoreReferences();
         }
-        this.jarFileTmpMap = objm.readValue(cacheFile, CACHE_TYPE);
+        this.persistedJarFileMap = copyOf(jarFileTmpMap);
         initialized = true;
     }
 
-    private void writeCacheToDisk() throws IOException {
-        File cacheFile = getCacheFile();
-        if (!cacheFile.isFile()) {
-            if (!cacheFile.createNewFile()) {
-                logger.error("Could not create fresh cache file. Filesystem corrupt or not enough permissions?");
-                throw new IOException("Could not create fresh cache file. Filesystem corrupt or not enough permissions?");
+    private UnpackStore openUnpackStore(boolean create) throws IOException {
+        var base = baseDirectory.get();
+        if (!create && !new File(base, UnpackStore.STORE_DIRECTORY_NAME).isDirectory()) return null;
+        return UnpackStore.forBaseDirectory(base);
+    }
+
+    /**
+     * Forgets stored trees of cached jars which got deleted while no scanner referenced them, these jars get extracted again
+     */
+    private void dropMissingTrees() {
+        jarFileTmpMap.replaceAll((directory, jars) -> {
+            Set<JarStateHolder> present = new HashSet<>();
+            for (JarStateHolder holder : jars) {
+                var tree = holder.getUnzippedDirectory();
+                if (tree != null && unpackStore.isStored(tree) && !tree.isDirectory()) {
+                    var withoutTree = new JarStateHolder(holder);
+                    withoutTree.setUnzippedDirectory(null);
+                    present.add(withoutTree);
+                } else {
+                    present.add(holder);
+                }
             }
+            return present;
+        });
+    }
+
+    /**
+     * References exactly the stored trees of the current state and collects the released ones in the background
+     */
+    private void updateStoreReferences() {
+        var store = unpackStore;
+        if (store == null) return;
+        List<File> trees = getAllScannedJars()
+                .map(JarStateHolder::getUnzippedDirectory)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        store.retainOnly(this, trees);
+        try {
+            executors.getIoExecutor().execute(() -> {
+                try {
+                    store.collectGarbage();
+                } catch (IOException e) {
+                    logger.warn(String.format("Could not collect unused trees of %s", store.getRoot()), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Executors are shutting down, the next scan collects instead
         }
-        objm.writeValue(cacheFile, this.jarFileTmpMap);
+    }
+
+    private void writeCacheToDisk() throws IOException {
+        scanCache.update(persistedJarFileMap, jarFileTmpMap);
+        this.persistedJarFileMap = copyOf(jarFileTmpMap);
+    }
+
+    private static Map<File, Set<JarStateHolder>> copyOf(Map<File, Set<JarStateHolder>> state) {
+        Map<File, Set<JarStateHolder>> copy = new HashMap<>();
+        state.forEach((directory, jars) -> copy.put(directory, new HashSet<>(jars)));
+        return copy;
     }
 
     public void addDirectory(File directory) {
@@ -99,145 +166,446 @@ public class JarFileScanner {
         this.baseDirectory = () -> baseDir;
     }
 
-    public void scan(ScanMode scanMode) throws JarUnpackingException, IOException {
+    public UnpackMode getUnpackMode() {
+        return unpackMode;
+    }
+
+    /**
+     * Sets whether scanned jars get extracted into the base directory or are left in place.
+     * Has to be called before {@link #scan(ScanMode)}
+     *
+     * @param unpackMode mode to use for the next scans
+     */
+    public void setUnpackMode(UnpackMode unpackMode) {
+        this.unpackMode = Objects.requireNonNull(unpackMode);
+    }
+
+    public JarFingerprinter getJarFingerprinter() {
+        return jarFingerprinter;
+    }
+
+    /**
+     * Sets the strategy used to detect changed jars. Defaults to {@link Md5JarFingerprinter}.
+     * Cached jars fingerprinted with a different strategy get scanned again
+     *
+     * @param jarFingerprinter strategy to use for the next scans
+     */
+    public void setJarFingerprinter(JarFingerprinter jarFingerprinter) {
+        this.jarFingerprinter = Objects.requireNonNull(jarFingerprinter);
+    }
+
+    public EntrySelector getEntrySelector() {
+        return entrySelector;
+    }
+
+    /**
+     * Restricts which entries get extracted and indexed. Defaults to {@link EntrySelector#all()}.
+     * Cached jars scanned with a different selector get scanned again
+     *
+     * @param entrySelector selector to use for the next scans
+     */
+    public void setEntrySelector(EntrySelector entrySelector) {
+        this.entrySelector = Objects.requireNonNull(entrySelector);
+    }
+
+    public synchronized void scan(ScanMode scanMode) throws JarUnpackingException, IOException {
+        scan(scanMode, holder -> {
+        });
+    }
+
+    /**
+     * Scans like {@link #scan(ScanMode)}, but hands every jar downstream as soon as it is ready.
+     * Unchanged jars are published right away, changed ones once they are unpacked.
+     * <p>
+     * The publisher is cold, every subscription runs its own scan on a thread of the I/O executor. A subscriber that requests slowly
+     * holds back the scan: at most {@link #MAX_JARS_IN_FLIGHT} jars are being unpacked and
+     * {@link Flow#defaultBufferSize()} jars are buffered per subscriber at any time
+     *
+     * @param scanMode mode for the scan
+     * @return Publisher of all scanned jars, completing once the scan is done and the cache got written
+     */
+    public Flow.Publisher<JarStateHolder> publish(ScanMode scanMode) {
+        return subscriber -> {
+            var publisher = new SubmissionPublisher<JarStateHolder>(executors.getIoExecutor(), Flow.defaultBufferSize());
+            publisher.subscribe(subscriber);
+            try {
+                executors.getIoExecutor().execute(() -> {
+                    try {
+                        synchronized (this) {
+                            scan(scanMode, publisher::submit);
+                        }
+                        publisher.close();
+                    } catch (JarUnpackingException | IOException | RuntimeException e) {
+                        publisher.closeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                publisher.closeExceptionally(new IOException("Scanner executors are shut down", e));
+            }
+        };
+    }
+
+    private void scan(ScanMode scanMode, Consumer<JarStateHolder> onJarReady) throws JarUnpackingException, IOException {
         if (!initialized) {
             throw new IllegalStateException("Scanner is not initialized, call init() first!");
         }
         try {
             if (scanMode == ScanMode.FORCE) {
-                jarFileTmpMap.clear();
+                // Cached entries stay visible to readers until they get replaced, they are just not used for skipping
+                jarsByPath.clear();
+                jarsByHash.clear();
+            } else {
+                rebuildLookupIndexes();
             }
 
-            for (File pluginDirectory : pluginDirectories) {
-                Set<JarStateHolder> scanResult = scanDirectory(pluginDirectory);
-                jarFileTmpMap.put(pluginDirectory, scanResult);
-            }
+            prepareUnpackStore();
+            var jarFiles = listJarFiles(List.copyOf(pluginDirectories));
+            jarFileTmpMap.putAll(scanJars(jarFiles, onJarReady));
         } finally {
+            updateStoreReferences();
             this.writeCacheToDisk();
         }
 
         hasScanned = true;
     }
 
-    private Set<JarStateHolder> scanDirectory(File directory) throws JarUnpackingException, IOException {
-        var jarFiles = directory.listFiles((dir, name) -> name.endsWith(".jar") | name.endsWith(".war"));
-        if (null == jarFiles) return Collections.emptySet();
+    private void prepareUnpackStore() throws IOException {
+        if (unpackMode == UnpackMode.EXTRACT || unpackStore == null) {
+            unpackStore = openUnpackStore(unpackMode == UnpackMode.EXTRACT);
+        }
+    }
 
-        var res = new HashSet<JarStateHolder>();
-        int futuresSpawned = 0;
-        for (File zippedJarFile : jarFiles) {
-            if (!zippedJarFile.isFile()) continue;
-
-            var hasher = new FileHasher(zippedJarFile);
-            var hash = hasher.hashMD5();
-
-            var hasAlreadyScannedByName = this.getAllScannedJars()
-                    .anyMatch(j -> j.getZippedJarFile().getName().equals(zippedJarFile.getName()));
-
-            var hasAlreadyScannedByHash = this.getAllScannedJars()
-                    .filter(j -> j.getJarFileHash() != null)
-                    .anyMatch(j -> j.getJarFileHash().equals(hash));
-
-            if (hasAlreadyScannedByHash && hasAlreadyScannedByName) {
-                logger.info(String.format(
-                        "Skipping file %s. Hasn't changed since last scan. Use ScanMode.FORCE to force"
-                        , zippedJarFile.getAbsolutePath())
-                );
-                if (debug) debugCountOfSkippedJarFiles.incrementAndGet();
-                this.getAllScannedJars()
-                        .filter(j -> j.getJarFileHash().equals(hash))
-                        .findFirst()
-                        .ifPresent(res::add);
-                continue;
-            } else if (hasAlreadyScannedByName) {
-                Optional<File> unzippedDirectory = this.getAllScannedJars()
-                        .filter(j -> j.getZippedJarFile().getName().equals(zippedJarFile.getName()))
-                        .findFirst()
-                        .map(JarStateHolder::getUnzippedDirectory);
-
-                if (unzippedDirectory.isPresent()) {
-                    FileUtils.cleanDirectory(unzippedDirectory.get());
-                    if (!unzippedDirectory.get().delete()) {
-                        throw new IOException("Could not delete old unzipped directory. Check filesystem");
-                    }
-                }
+    private void rebuildLookupIndexes() {
+        jarsByPath.clear();
+        jarsByHash.clear();
+        getAllScannedJars().forEach(this::indexHolder);
+    }
+
+    private void indexHolder(JarStateHolder holder) {
+        jarsByPath.put(holder.getZippedJarFile().getAbsoluteFile(), holder);
+        if (holder.getJarFileHash() != null && isUsable(holder)) {
+            jarsByHash.putIfAbsent(holder.getJarFileHash(), holder);
+        }
+    }
+
+    /**
+     * @return true if the cached holder provides everything the current {@link UnpackMode} and {@link EntrySelector} need
+     */
+    private boolean isUsable(JarStateHolder holder) {
+        return (unpackMode == UnpackMode.IN_PLACE || holder.getUnzippedDirectory() != null)
+                && entrySelector.getKey().equals(holder.getEntrySelectorKey());
+    }
+
+    /**
+     * Processes only the given jars of a plugin directory, leaving all other cached jars untouched.
+     * Jars that do not exist anymore get dropped from the cache
+     *
+     * @param pluginDirectory directory previously added through {@link #addDirectory(File)}
+     * @param jarFiles        added, modified or removed jars inside {@code pluginDirectory}
+     * @return Jars which actually changed
+     * @throws JarUnpackingException If a jar could not be unpacked
+     * @throws IOException           If the cache could not be written
+     */
+    public synchronized JarChangeEvent rescan(File pluginDirectory, Collection<File> jarFiles) throws JarUnpackingException, IOException {
+        guardAccess();
+        if (!pluginDirectories.contains(pluginDirectory)) {
+            throw new IllegalArgumentException("Directory was not added to this scanner");
+        }
+
+        Map<File, JarStateHolder> before = new HashMap<>();
+        for (JarStateHolder holder : getAllScannedJarForDirectory(pluginDirectory)) {
+            before.put(holder.getZippedJarFile().getAbsoluteFile(), holder);
+        }
+        Set<File> requested = new HashSet<>();
+        for (File jarFile : jarFiles) {
+            requested.add(jarFile.getAbsoluteFile());
+        }
+
+        Set<JarStateHolder> scanned;
+        try {
+            prepareUnpackStore();
+            rebuildLookupIndexes();
+            scanned = scanJars(Map.of(pluginDirectory, requested.toArray(new File[0])), holder -> {
+            }).get(pluginDirectory);
+
+            Set<JarStateHolder> updated = new HashSet<>();
+            for (Map.Entry<File, JarStateHolder> entry : before.entrySet()) {
+                if (!requested.contains(entry.getKey())) updated.add(entry.getValue());
             }
+            updated.addAll(scanned);
+            jarFileTmpMap.put(pluginDirectory, Collections.unmodifiableSet(updated));
+        } finally {
+            updateStoreReferences();
+            this.writeCacheToDisk();
+        }
 
-            Callable<JarStateHolder> unpackFuture = () -> {
-                if (debug) debugCountOfUnpackedJarFiles.incrementAndGet();
-
-                File innerZipperJarFile = new File(zippedJarFile.getAbsolutePath());
-                var holder = new JarStateHolder(innerZipperJarFile);
-                res.add(holder);
-                try (JarFile jarFile = new JarFile(innerZipperJarFile)) {
-                    String cleanJarFileName = innerZipperJarFile.getName().replace(".jar", "");
-                    File unzippedDirectory = unpackJarFileToDiskStorage(jarFile, cleanJarFileName);
-                    holder.setUnzippedDirectory(unzippedDirectory);
-                    holder.setJarFileHash(hash);
-                } catch (IOException e) {
-                    throw new JarUnpackingException("Failed to unpack Jar", e);
-                }
-                return holder;
-            };
-            completionService.submit(unpackFuture);
-            futuresSpawned++;
+        Map<File, JarStateHolder> after = new HashMap<>();
+        for (JarStateHolder holder : scanned) {
+            after.put(holder.getZippedJarFile().getAbsoluteFile(), holder);
+        }
+        Set<JarStateHolder> added = new HashSet<>();
+        Set<JarStateHolder> modified = new HashSet<>();
+        Set<JarStateHolder> removed = new HashSet<>();
+        for (File jarFile : requested) {
+            var old = before.get(jarFile);
+            var current = after.get(jarFile);
+            if (old == null && current != null) {
+                added.add(current);
+            } else if (old != null && current == null) {
+                removed.add(old);
+            } else if (old != null && !Objects.equals(old.getJarFileHash(), current.getJarFileHash())) {
+                modified.add(current);
+            }
+        }
+        return new JarChangeEvent(pluginDirectory, added, modified, removed);
+    }
+
+    /**
+     * Processes all jars of a plugin directory, reporting what changed since the last scan
+     *
+     * @param pluginDirectory directory previously added through {@link #addDirectory(File)}
+     * @return Jars which actually changed
+     * @throws JarUnpackingException If a jar could not be unpacked
+     * @throws IOException           If the cache could not be written
+     */
+    public synchronized JarChangeEvent rescanDirectory(File pluginDirectory) throws JarUnpackingException, IOException {
+        guardAccess();
+        Set<File> jarFiles = new HashSet<>();
+        for (JarStateHolder holder : getAllScannedJarForDirectory(pluginDirectory)) {
+            jarFiles.add(holder.getZippedJarFile());
         }
+        var listed = pluginDirectory.listFiles((dir, name) -> isJarFileName(name));
+        if (listed != null) jarFiles.addAll(Arrays.asList(listed));
+        return rescan(pluginDirectory, jarFiles);
+    }
 
-        int deltaReceived = futuresSpawned;
+    /**
+     * @return Unmodifiable view of all added plugin directories
+     */
+    public List<File> getPluginDirectories() {
+        return Collections.unmodifiableList(pluginDirectories);
+    }
+
+    static boolean isJarFileName(String name) {
+        return name.endsWith(".jar") | name.endsWith(".war");
+    }
+
+    /**
+     * Lists all plugin directories at the same time, they may live on different volumes
+     *
+     * @return Jars of every directory, in the order of {@code directories}
+     */
+    private Map<File, File[]> listJarFiles(List<File> directories) throws JarUnpackingException {
+        Map<File, Future<File[]>> listings = new LinkedHashMap<>();
+        for (File directory : directories) {
+            listings.put(directory, executors.getIoExecutor().submit(() -> directory.listFiles((dir, name) -> isJarFileName(name))));
+        }
+
+        Map<File, File[]> res = new LinkedHashMap<>();
         try {
-            while (deltaReceived > 0) {
-                Future<JarStateHolder> maybeRanFuture = completionService.take();
-                res.add(maybeRanFuture.get());
-                deltaReceived--;
+            for (Map.Entry<File, Future<File[]>> listing : listings.entrySet()) {
+                var jarFiles = listing.getValue().get();
+                res.put(listing.getKey(), jarFiles == null ? new File[0] : jarFiles);
             }
         } catch (InterruptedException e) {
-            throw new JarUnpackingException("Future was interrupted", e);
+            Thread.currentThread().interrupt();
+            throw new JarUnpackingException("Listing plugin directories was interrupted", e);
         } catch (ExecutionException e) {
-            throw new JarUnpackingException("Future did not complete successfully", e);
+            throw new JarUnpackingException("Failed to list plugin directory", e);
         }
-
         return res;
     }
 
     /**
-     * Unpacks a jar into a directory. Returns directory for further processing
-     * Runs in its own future
+     * Scans the jars of all given directories through a single completion service.
+     * Jars get submitted round robin over the directories, so every directory has jars in flight right from the start
      *
-     * @param jarfile JarFile to unpack
-     * @return Directory in which the jarFile was unpacked
-     * @throws IOException If not able to unpack jar
+     * @param jarFiles   jars to scan by plugin directory
+     * @param onJarReady called on the scanning thread for every finished jar, may block to slow down the scan
+     * @return Scanned jars of every directory in {@code jarFiles}, empty sets included
      */
-    private File unpackJarFileToDiskStorage(JarFile jarfile, String name) throws IOException {
-        var tmpDir = Files.createDirectory(new File(this.baseDirectory.get(), String.format("KMS-Plugin-%s", name)).toPath());
-
-        Iterator<JarEntry> entryIterator = jarfile.entries().asIterator();
-
-        while (entryIterator.hasNext()) {
-            var entry = entryIterator.next();
-            var destFile = new File(tmpDir.toFile(), entry.getName());
-            final String destFilePath = destFile.getAbsolutePath();
-            if (entry.getName().endsWith("/") && !destFile.isDirectory()) {
-                if (!destFile.mkdir()) {
-                    throw new IOException(String.format("Failed to create tmp directory: %s", destFilePath));
+    private Map<File, Set<JarStateHolder>> scanJars(Map<File, File[]> jarFiles, Consumer<JarStateHolder> onJarReady)
+            throws JarUnpackingException, IOException {
+        var completionService = new ExecutorCompletionService<Map.Entry<File, JarStateHolder>>(executors.getIoExecutor());
+        Map<File, Set<JarStateHolder>> res = new HashMap<>();
+        int maxJarCount = 0;
+        for (Map.Entry<File, File[]> directory : jarFiles.entrySet()) {
+            res.put(directory.getKey(), new HashSet<>());
+            maxJarCount = Math.max(maxJarCount, directory.getValue().length);
+        }
+
+        int futuresSpawned = 0;
+        int deltaReceived = 0;
+        for (int i = 0; i < maxJarCount; i++) {
+            for (Map.Entry<File, File[]> directory : jarFiles.entrySet()) {
+                if (i >= directory.getValue().length) continue;
+                var pluginDirectory = directory.getKey();
+                var zippedJarFile = directory.getValue()[i];
+
+                long start = instrumentation.start();
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(zippedJarFile.toPath(), BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (!attributes.isRegularFile()) continue;
+
+                long fileSize = attributes.size();
+                long lastModified = attributes.lastModifiedTime().toMillis();
+                var cachedByPath = jarsByPath.get(zippedJarFile.getAbsoluteFile());
+
+                // Size and mtime unchanged, the content is trusted to be the same without hashing it
+                if (cachedByPath != null && isUsable(cachedByPath) && hasCurrentFingerprint(cachedByPath)
+                        && cachedByPath.getFileSize() == fileSize && cachedByPath.getLastModified() == lastModified) {
+                    skip(zippedJarFile);
+                    instrumentation.jarScanned(zippedJarFile, CacheResult.UNCHANGED, start);
+                    res.get(pluginDirectory).add(cachedByPath);
+                    onJarReady.accept(cachedByPath);
+                    continue;
                 }
-                logger.info(String.format("Creating directory %s", destFilePath));
-                continue;
+
+                if (futuresSpawned - deltaReceived >= MAX_JARS_IN_FLIGHT) {
+                    takeFinishedJar(completionService, res, onJarReady);
+                    deltaReceived++;
+                }
+                completionService.submit(() -> Map.entry(pluginDirectory,
+                        scanJar(zippedJarFile, cachedByPath, fileSize, lastModified, start)));
+                futuresSpawned++;
             }
+        }
 
-            if (debug) debugCountOfUnpackedJarEntries.incrementAndGet();
+        while (deltaReceived < futuresSpawned) {
+            takeFinishedJar(completionService, res, onJarReady);
+            deltaReceived++;
+        }
 
-            logger.info(String.format("Unzipping file %s", destFilePath));
-            try (var is = jarfile.getInputStream(entry)) {
-                try (var fout = new FileOutputStream(destFile)) {
-                    while (is.available() > 0) {
-                        fout.write(is.read());
-                    }
-                }
+        res.replaceAll((directory, jars) -> Collections.unmodifiableSet(jars));
+        return res;
+    }
+
+    /**
+     * Fingerprints a jar whose size or mtime changed and unpacks it unless the content turns out to be known.
+     * Fingerprinting runs on the pool as well, so hashing the next jar overlaps with unpacking the previous one
+     */
+    private JarStateHolder scanJar(File zippedJarFile, JarStateHolder cachedByPath, long fileSize, long lastModified,
+                                   long scanStart) throws JarUnpackingException, IOException {
+        long hashStart = instrumentation.start();
+        var hash = fingerprint(zippedJarFile);
+        instrumentation.phaseCompleted(Phase.HASH, zippedJarFile.getPath(), hashStart, fileSize);
+
+        if (cachedByPath != null && isUsable(cachedByPath) && hash.equals(cachedByPath.getJarFileHash())) {
+            var touched = new JarStateHolder(cachedByPath);
+            touched.setFileSize(fileSize);
+            touched.setLastModified(lastModified);
+            skip(zippedJarFile);
+            instrumentation.jarScanned(zippedJarFile, CacheResult.SAME_CONTENT, scanStart);
+            return touched;
+        }
+
+        // Stored trees may be shared and get collected once unreferenced, only trees of older versions are deleted here
+        if (cachedByPath != null && cachedByPath.getUnzippedDirectory() != null
+                && !isStoredTree(cachedByPath.getUnzippedDirectory()) && cachedByPath.getUnzippedDirectory().isDirectory()) {
+            FileUtils.cleanDirectory(cachedByPath.getUnzippedDirectory());
+            if (!cachedByPath.getUnzippedDirectory().delete()) {
+                throw new IOException("Could not delete old unzipped directory. Check filesystem");
+            }
+        }
+
+        File innerZipperJarFile = new File(zippedJarFile.getAbsolutePath());
+        // Same content already scanned at another path, its index and stored tree are shared
+        var cachedByHash = jarsByHash.get(hash);
+        if (cachedByHash != null
+                && (cachedByHash.getUnzippedDirectory() == null || isStoredTree(cachedByHash.getUnzippedDirectory()))) {
+            var duplicate = new JarStateHolder(cachedByHash);
+            duplicate.setZippedJarFile(innerZipperJarFile);
+            duplicate.setFileSize(fileSize);
+            duplicate.setLastModified(lastModified);
+            skip(zippedJarFile);
+            instrumentation.jarScanned(zippedJarFile, CacheResult.DUPLICATE, scanStart);
+            return duplicate;
+        }
+
+        var holder = new JarStateHolder(innerZipperJarFile);
+        holder.setFileSize(fileSize);
+        holder.setLastModified(lastModified);
+        var selector = entrySelector;
+        holder.setEntrySelectorKey(selector.getKey());
+        try (var jarFile = ZipArchive.open(innerZipperJarFile)) {
+            long traverseStart = instrumentation.start();
+            holder.setClassEntries(JarArchiveTraverser.indexClassEntries(jarFile, selector));
+            holder.setResourceEntries(JarArchiveTraverser.indexResourceEntries(jarFile, selector));
+            instrumentation.phaseCompleted(Phase.TRAVERSE, jarFile.getName(), traverseStart, 0);
+            if (unpackMode == UnpackMode.EXTRACT) {
+                holder.setUnzippedDirectory(unpackJarFileToDiskStorage(jarFile, hash, selector));
             }
+            holder.setJarFileHash(hash);
+        } catch (IOException e) {
+            throw new JarUnpackingException("Failed to unpack Jar", e);
         }
+        instrumentation.jarScanned(zippedJarFile, CacheResult.MISS, scanStart);
+        return holder;
+    }
 
-        logger.info("Finished unzipping " + tmpDir.toString());
-        return new File(tmpDir.toString());
+    private void takeFinishedJar(
+            CompletionService<Map.Entry<File, JarStateHolder>> completionService,
+            Map<File, Set<JarStateHolder>> res,
+            Consumer<JarStateHolder> onJarReady
+    ) throws JarUnpackingException {
+        try {
+            var scanned = completionService.take().get();
+            var holder = scanned.getValue();
+            res.get(scanned.getKey()).add(holder);
+            // Makes a jar that shows up in a second directory during the same scan reuse this one
+            indexHolder(holder);
+            onJarReady.accept(holder);
+        } catch (InterruptedException e) {
+            throw new JarUnpackingException("Future was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new JarUnpackingException("Future did not complete successfully", e);
+        }
+    }
+
+    private void skip(File zippedJarFile) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Skipping file {}. Hasn't changed since last scan. Use ScanMode.FORCE to force", zippedJarFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * @return Fingerprint of the jar, prefixed with the id of the strategy that computed it
+     */
+    private String fingerprint(File zippedJarFile) throws IOException {
+        return jarFingerprinter.getId() + ":" + jarFingerprinter.fingerprint(zippedJarFile);
+    }
+
+    private boolean hasCurrentFingerprint(JarStateHolder holder) {
+        return holder.getJarFileHash() != null && holder.getJarFileHash().startsWith(jarFingerprinter.getId() + ":");
+    }
+
+    private boolean isStoredTree(File directory) {
+        var store = unpackStore;
+        return store != null && store.isStored(directory);
+    }
+
+    /**
+     * Unpacks a jar into the {@link UnpackStore}. Returns directory for further processing.
+     * Jars with the same content and selector share one tree, which is only extracted if it does not exist yet.
+     * Runs in its own future, large jars are split across idle workers of the scanner pool
+     *
+     * @param jarfile Jar to unpack
+     * @param hash    fingerprint of the jar
+     * @return Directory in which the jarFile was unpacked
+     * @throws IOException If not able to unpack jar
+     */
+    private File unpackJarFileToDiskStorage(ZipArchive jarfile, String hash, EntrySelector selector) throws IOException {
+        return unpackStore.acquire(this, UnpackStore.keyOf(hash, selector.getKey()), tmpDir -> {
+            long start = instrumentation.start();
+            var result = jarExtractor.extract(jarfile, tmpDir, selector);
+            instrumentation.phaseCompleted(Phase.UNPACK, jarfile.getName(), start, result.writtenBytes);
+
+            logger.info(String.format("Finished unzipping %s into %s, %d files", jarfile.getName(), tmpDir, result.extractedEntries));
+        });
     }
 
     public Set<JarStateHolder> getAll() {
@@ -274,53 +642,45 @@ public class JarFileScanner {
                 .flatMap(Set::stream);
     }
 
-    public enum ScanMode {
-        SKIP_ALREADY_SCANNED,
-        FORCE;
-    }
-
     /**
-     * Sole reason for this class is use it as a type token when reading / writing to cache.
-     * Using {@link TypeReference} inline leads to weird autoformatting with Intellij :(
+     * @return Instrumentation timing this scanner, register a {@link software.kloud.classery.metrics.ClasseryListener}
+     * on it to receive the timings
      */
-    private static final class CacheTypeReference extends TypeReference<Map<File, Set<JarStateHolder>>> {
-
+    public Instrumentation getInstrumentation() {
+        return instrumentation;
     }
 
-    // DEBUG methods
-    // Not part of public API
-    // Override this class in a test and call setDebug() to start recording these metrics
-
-    void setDebug() {
-        this.debug = true;
+    public ClasseryExecutors getExecutors() {
+        return executors;
     }
 
-    DebugHolder getDebugInfo() {
-        return new DebugHolder(
-                debugCountOfUnpackedJarEntries.get(),
-                debugCountOfUnpackedJarFiles.get(),
-                debugCountOfSkippedJarEntries.get(),
-                debugCountOfSkippedJarFiles.get()
-
-        );
+    /**
+     * Releases the stored trees of this scanner and shuts down the executors if this scanner created them itself.
+     * Trees nobody else references get deleted by the next scan of another scanner on the same base directory,
+     * a later scanner extracts them again
+     */
+    @Override
+    public void close() {
+        var store = unpackStore;
+        if (store != null) store.releaseAll(this);
+        if (ownsExecutors) {
+            executors.close();
+        }
     }
 
-    protected static final class DebugHolder {
-        final int countOfUnpackedJarEntries;
-        final int countOfUnpackedJarFiles;
-        final int countOfSkippedJarEntries;
-        final int countOfSkippedJarFiles;
+    public enum ScanMode {
+        SKIP_ALREADY_SCANNED,
+        FORCE;
+    }
 
-        DebugHolder(
-                int countOfUnpackedJarEntries,
-                int countOfUnpackedJarFiles,
-                int countOfSkippedJarEntries,
-                int countOfSkippedJarFiles
-        ) {
-            this.countOfUnpackedJarEntries = countOfUnpackedJarEntries;
-            this.countOfUnpackedJarFiles = countOfUnpackedJarFiles;
-            this.countOfSkippedJarEntries = countOfSkippedJarEntries;
-            this.countOfSkippedJarFiles = countOfSkippedJarFiles;
-        }
+    public enum UnpackMode {
+        /**
+         * Extracts every jar into the {@link UnpackStore} below the base directory
+         */
+        EXTRACT,
+        /**
+         * Only hashes the jars. Classes are read straight from the jar entries, nothing is written to disk
+         */
+        IN_PLACE;
     }
 }
@@ -1,12 +1,36 @@
 package software.kloud.classery.jar;
 
 import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 @SuppressWarnings("WeakerAccess")
 public class JarStateHolder {
     private File zippedJarFile;
     private String jarFileHash;
     private File unzippedDirectory;
+    private long fileSize;
+    private long lastModified;
+    /**
+     * Binary class name to jar entry name of every class in the jar, {@code null} if not indexed yet.
+     * Entry names are relative to {@link #unzippedDirectory} for extracted jars
+     */
+    private Map<String, String> classEntries;
+    /**
+     * Entry names of every file in the jar that is not a class, {@code null} if not indexed yet.
+     * Named like class entries, see {@link #classEntries}
+     */
+    private List<String> resourceEntries;
+    /**
+     * {@link EntrySelector#getKey()} of the selector the jar was scanned with
+     */
+    private String entrySelectorKey;
+    /**
+     * Scan cache record {@link #classEntries} and {@link #resourceEntries} get decoded from on first use, {@code null}
+     * once decoded or if the entries were never cached
+     */
+    private volatile ScanCache.EntryRecord entryRecord;
 
     public JarStateHolder() {
     }
@@ -16,6 +40,23 @@ public class JarStateHolder {
         this.unzippedDirectory = null;
     }
 
+    /**
+     * Copies all state of {@code other}
+     */
+    public JarStateHolder(JarStateHolder other) {
+        this.zippedJarFile = other.zippedJarFile;
+        this.jarFileHash = other.jarFileHash;
+        this.unzippedDirectory = other.unzippedDirectory;
+        this.fileSize = other.fileSize;
+        this.lastModified = other.lastModified;
+        // Read before the entries, a record decoded in between has already published them
+        var record = other.entryRecord;
+        this.classEntries = other.classEntries;
+        this.resourceEntries = other.resourceEntries;
+        this.entryRecord = record;
+        this.entrySelectorKey = other.entrySelectorKey;
+    }
+
     public File getZippedJarFile() {
         return zippedJarFile;
     }
@@ -32,6 +73,66 @@ public class JarStateHolder {
         this.unzippedDirectory = directory;
     }
 
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public Map<String, String> getClassEntries() {
+        decodeEntries();
+        return classEntries;
+    }
+
+    public void setClassEntries(Map<String, String> classEntries) {
+        decodeEntries();
+        this.classEntries = classEntries;
+    }
+
+    public List<String> getResourceEntries() {
+        decodeEntries();
+        return resourceEntries;
+    }
+
+    public void setResourceEntries(List<String> resourceEntries) {
+        decodeEntries();
+        this.resourceEntries = resourceEntries;
+    }
+
+    void setEntryRecord(ScanCache.EntryRecord entryRecord) {
+        this.entryRecord = entryRecord;
+    }
+
+    private void decodeEntries() {
+        if (entryRecord == null) return;
+        synchronized (this) {
+            var record = entryRecord;
+            if (record == null) return;
+            record.decode();
+            this.classEntries = record.getClassEntries();
+            this.resourceEntries = record.getResourceEntries();
+            entryRecord = null;
+        }
+    }
+
+    public String getEntrySelectorKey() {
+        return entrySelectorKey;
+    }
+
+    public void setEntrySelectorKey(String entrySelectorKey) {
+        this.entrySelectorKey = entrySelectorKey;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof JarStateHolder)) return false;
@@ -45,6 +146,11 @@ public class JarStateHolder {
                 && this.unzippedDirectory.equals(other.unzippedDirectory);
     }
 
+    @Override
+    public int hashCode() {
+        return Objects.hash(zippedJarFile, unzippedDirectory);
+    }
+
     public String getJarFileHash() {
         return jarFileHash;
     }
@@ -2,29 +2,41 @@ package software.kloud.classery.jar;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.kloud.classery.concurrent.ClasseryExecutors;
 
 import java.io.File;
-import java.util.*;
-import java.util.concurrent.CompletionService;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Traverses the given base directory for .class files with multiple threads.
- * Use a thread pool internally. Starts as many futures as first level directories,
- * seen from the root directory
+ * Every directory becomes its own fork join task, so a single deep package tree gets spread over all threads
+ * by work stealing. Each task returns its own result list, lists get concatenated while joining
  * <p>
- * TODO: Add more filtering?
+ * Only .class files accepted by the {@link EntrySelector} are returned, it sees their path relative to the root node
  */
 @SuppressWarnings("WeakerAccess")
 public class PackageAwareJarDirectoryTraverser {
     public static final int DEFAULT_N_THREADS = 4;
     private static final List<String> commonJarDirectoriesNames = List.of("BOOT-INF/classes/", "META-INF/");
+    /**
+     * Directory of the version specific classes of multi-release jars
+     */
+    private static final String VERSIONED_DIRECTORY = "META-INF/versions/";
     private static final Logger logger = LoggerFactory.getLogger(PackageAwareJarDirectoryTraverser.class);
     private final File rootNode;
-    private final CompletionService<Set<ClassFileHolder>> completionService;
+    private final int nThreads;
+    private final ForkJoinPool pool;
+    private final EntrySelector entrySelector;
 
     /**
      * Create a new traverser starting at {@code rootNode} with {@link PackageAwareJarDirectoryTraverser#DEFAULT_N_THREADS} threads
@@ -46,7 +58,36 @@ public class PackageAwareJarDirectoryTraverser {
             throw new IllegalArgumentException("rootNode is not a directory");
         }
         this.rootNode = rootNode;
-        this.completionService = new ExecutorCompletionService<>(Executors.newFixedThreadPool(nThreads));
+        this.nThreads = nThreads;
+        this.pool = null;
+        this.entrySelector = EntrySelector.all();
+    }
+
+    /**
+     * Create a new traverser starting at {@code rootNode} running on a shared pool, e.g. {@link ClasseryExecutors#getCpuPool()}
+     *
+     * @param rootNode root directory for traverser
+     * @param pool     pool to run on, not shut down by the traverser
+     */
+    public PackageAwareJarDirectoryTraverser(File rootNode, ForkJoinPool pool) {
+        this(rootNode, pool, EntrySelector.all());
+    }
+
+    /**
+     * Create a new traverser starting at {@code rootNode} running on a shared pool, only returning selected classes
+     *
+     * @param rootNode      root directory for traverser
+     * @param pool          pool to run on, not shut down by the traverser
+     * @param entrySelector selector applied to the path of every .class file relative to {@code rootNode}
+     */
+    public PackageAwareJarDirectoryTraverser(File rootNode, ForkJoinPool pool, EntrySelector entrySelector) {
+        if (!rootNode.isDirectory()) {
+            throw new IllegalArgumentException("rootNode is not a directory");
+        }
+        this.rootNode = rootNode;
+        this.nThreads = pool.getParallelism();
+        this.pool = pool;
+        this.entrySelector = Objects.requireNonNull(entrySelector);
     }
 
     /**
@@ -55,76 +96,97 @@ public class PackageAwareJarDirectoryTraverser {
      * @return All found .class files
      */
     public List<ClassFileHolder> traverse() {
-        assert rootNode.isDirectory();
-        int futuresCount = 0;
-
-        for (File file : Objects.requireNonNull(rootNode.listFiles())) {
-            if (file.isFile() && filterForClassFile(file)) {
-                completionService.submit(() ->
-                        Collections.singleton(new ClassFileHolder(file, "")));
-                futuresCount++;
-            } else if (file.isDirectory()) {
-                completionService.submit(() -> traverseIntern(file, new HashSet<>()));
-                futuresCount++;
-            }
+        if (pool != null) {
+            return pool.invoke(new DirectoryTask(rootNode.toPath(), "", entrySelector));
         }
-
-        int deltaReceived = futuresCount;
-        List<Set<ClassFileHolder>> pathPackageHolders = new ArrayList<>();
-        while (deltaReceived > 0) {
-            try {
-                var future = completionService.take();
-                pathPackageHolders.add(future.get());
-                deltaReceived--;
-            } catch (InterruptedException | ExecutionException e) {
-                System.err.println("skipped future");
-            }
+        var ownPool = new ForkJoinPool(nThreads);
+        try {
+            return ownPool.invoke(new DirectoryTask(rootNode.toPath(), "", entrySelector));
+        } finally {
+            ownPool.shutdown();
         }
+    }
 
-        return pathPackageHolders
-                .stream()
-                .flatMap(Set::stream)
-                .collect(Collectors.toList());
+    /**
+     * Derives the binary name from the path relative to {@link #rootNode}, e.g. {@code BOOT-INF/classes/a/B.class} to {@code a.B}
+     */
+    static String getBinaryClassNameFromRelativePath(String relativePath) {
+        var name = stripCommonJarDirectories(relativePath);
+        name = name.substring(0, name.length() - ".class".length());
+        return name.replace('/', '.');
     }
 
     /**
-     * Traverses directories. Gets called recursively. Runs in its own future.
-     *
-     * @param node       Filesystem node to start looking from
-     * @param foundSoFar Keeps track of already found classes
-     * @return {@link Set} containing all already and newly found classes
+     * Removes a leading {@code BOOT-INF/classes/} and {@code META-INF/}, which are not part of the package
      */
-    private Set<ClassFileHolder> traverseIntern(File node, Set<ClassFileHolder> foundSoFar) {
-        if (node.isFile() && filterForClassFile(node)) {
-            var name = getBinaryClassNameFromFile(node);
-            foundSoFar.add(new ClassFileHolder(node, name));
-        } else if (node.isDirectory()) {
-            for (File file : Objects.requireNonNull(node.listFiles())) {
-                traverseIntern(file, foundSoFar);
+    static String stripCommonJarDirectories(String relativePath) {
+        var name = relativePath;
+        for (String commonJarDirectory : commonJarDirectoriesNames) {
+            if (name.startsWith(commonJarDirectory)) {
+                name = name.substring(commonJarDirectory.length());
             }
         }
-        return foundSoFar;
+        return name;
     }
 
-    private String getBinaryClassNameFromFile(File node) {
-        var abs = node.getAbsolutePath();
-        abs = abs.replace(rootNode.getAbsolutePath(), "");
+    /**
+     * Of multi-release jars only the base version of every class is used, the versions below
+     * {@code META-INF/versions/<n>/} are never indexed
+     *
+     * @return true if {@code relativePath} lies below {@code META-INF/versions/}
+     */
+    static boolean isVersionedEntry(String relativePath) {
+        return relativePath.startsWith(VERSIONED_DIRECTORY);
+    }
 
-        for (String commonJarDirectory : commonJarDirectoriesNames) {
-            if (abs.contains(commonJarDirectory)) {
-                abs = abs.replace(commonJarDirectory, "");
-            }
-        }
+    private static boolean filterForClassFile(String fileName) {
+        return fileName.endsWith(".class");
+    }
 
-        abs = abs.replace(".class", "");
-        abs = abs.replaceAll("/", ".");
-        if (abs.startsWith(".")) {
-            abs = abs.substring(1);
+    /**
+     * Lists a single directory. Files are handled inline, every sub directory gets forked
+     */
+    private static final class DirectoryTask extends RecursiveTask<List<ClassFileHolder>> {
+        private static final long serialVersionUID = 1L;
+        private final Path directory;
+        /**
+         * Path of {@link #directory} relative to the root, '/' separated and ending with '/' unless empty
+         */
+        private final String relativePath;
+        private final EntrySelector entrySelector;
+
+        DirectoryTask(Path directory, String relativePath, EntrySelector entrySelector) {
+            this.directory = directory;
+            this.relativePath = relativePath;
+            this.entrySelector = entrySelector;
         }
-        return abs;
-    }
 
-    private boolean filterForClassFile(File file) {
-        return file.getName().endsWith(".class");
+        @Override
+        protected List<ClassFileHolder> compute() {
+            List<ClassFileHolder> found = new ArrayList<>();
+            List<DirectoryTask> subTasks = new ArrayList<>();
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path child : stream) {
+                    var attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    var fileName = child.getFileName().toString();
+                    if (attributes.isDirectory()) {
+                        subTasks.add(new DirectoryTask(child, relativePath + fileName + "/", entrySelector));
+                    } else if (attributes.isRegularFile() && filterForClassFile(fileName)
+                            && !isVersionedEntry(relativePath + fileName)
+                            && entrySelector.isSelected(relativePath + fileName)) {
+                        var name = getBinaryClassNameFromRelativePath(relativePath + fileName);
+                        found.add(new ClassFileHolder(child.toFile(), name));
+                    }
+                }
+            } catch (IOException e) {
+                logger.error(String.format("Skipped unreadable directory %s", directory), e);
+            }
+
+            for (DirectoryTask subTask : invokeAll(subTasks)) {
+                found.addAll(subTask.join());
+            }
+            return found;
+        }
     }
 }
@@ -0,0 +1,433 @@
+package software.kloud.classery.jar;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+/**
+ * Binary scan cache stored as {@code plugins.cache} plus an append-only {@code plugins.cache.journal}.
+ * <p>
+ * The snapshot gets memory mapped on startup, afterwards the journal gets replayed on top of it. Startup only decodes
+ * path, size, modification time, hash and tree of every snapshot record. The class and resource entries make up most
+ * of a record, they stay in the mapping until a jar needs them and are checked against the record checksum then.
+ * A scan only appends records for jars that actually changed. Once the journal outgrows the snapshot both get
+ * compacted into a fresh snapshot, written to a temporary file and atomically moved into place.
+ * Both files start with the same magic and version. A file in another format gets deleted together with the journal,
+ * records are never replayed on top of a snapshot that was rejected.
+ * Every record carries its length and a CRC32, a torn write at the end of the journal is dropped on the next start
+ */
+class ScanCache {
+    private static final Logger logger = LoggerFactory.getLogger(ScanCache.class);
+    private static final int MAGIC = 0x434C5343; // "CLSC"
+    private static final int VERSION = 5;
+    private static final int HEADER_SIZE = 8;
+    private static final long MIN_COMPACTION_SIZE = 64 * 1024;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private final Path snapshotFile;
+    private final Path journalFile;
+
+    ScanCache(File baseDirectory) {
+        this.snapshotFile = new File(baseDirectory, "plugins.cache").toPath();
+        this.journalFile = new File(baseDirectory, "plugins.cache.journal").toPath();
+    }
+
+    /**
+     * Reads the snapshot and replays the journal on top of it. Files in an unknown format get deleted
+     *
+     * @return All cached jars by plugin directory
+     * @throws IOException If the files exist but can not be read
+     */
+    Map<File, Set<JarStateHolder>> read() throws IOException {
+        Map<File, Map<File, JarStateHolder>> state = new HashMap<>();
+
+        if (Files.isRegularFile(snapshotFile)) {
+            boolean valid;
+            try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+                var buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                valid = hasHeader(buf);
+                if (valid) replay(buf, state, true);
+            }
+            if (!valid) {
+                // The journal holds changes relative to the rejected snapshot, without it they are meaningless
+                logger.info("Ignoring cache file in unknown format, all jars will be scanned again");
+                Files.delete(snapshotFile);
+                Files.deleteIfExists(journalFile);
+            }
+        }
+
+        if (Files.isRegularFile(journalFile)) {
+            boolean valid;
+            try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                var buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                valid = hasHeader(buf);
+                if (valid) {
+                    int validLength = replay(buf, state, false);
+                    if (validLength < channel.size()) {
+                        logger.warn(String.format("Dropping %d bytes of torn cache journal", channel.size() - validLength));
+                        channel.truncate(validLength);
+                    }
+                }
+            }
+            if (!valid) {
+                logger.info("Ignoring cache journal in unknown format, changed jars will be scanned again");
+                Files.delete(journalFile);
+            }
+        }
+
+        Map<File, Set<JarStateHolder>> res = new HashMap<>();
+        for (Map.Entry<File, Map<File, JarStateHolder>> directory : state.entrySet()) {
+            res.put(directory.getKey(), new HashSet<>(directory.getValue().values()));
+        }
+        return res;
+    }
+
+    /**
+     * Appends a record for every jar that differs between {@code previous} and {@code current}.
+     * Compacts the cache if the journal got too large
+     *
+     * @param previous state as of the last write
+     * @param current  state after the scan
+     * @throws IOException If the journal can not be written
+     */
+    void update(Map<File, Set<JarStateHolder>> previous, Map<File, Set<JarStateHolder>> current) throws IOException {
+        var before = flatten(previous);
+        var after = flatten(current);
+
+        List<ByteBuffer> records = new ArrayList<>();
+        for (Map.Entry<List<File>, JarStateHolder> entry : after.entrySet()) {
+            var old = before.get(entry.getKey());
+            if (old == entry.getValue() || isSame(old, entry.getValue())) continue;
+            records.add(encodePut(entry.getKey().get(0), entry.getValue()));
+        }
+        for (List<File> key : before.keySet()) {
+            if (!after.containsKey(key)) {
+                records.add(encodeRemove(key.get(0), key.get(1)));
+            }
+        }
+        if (records.isEmpty()) return;
+
+        try (FileChannel channel = FileChannel.open(journalFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            if (channel.size() == 0) {
+                var header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+                while (header.hasRemaining()) channel.write(header);
+            }
+            for (ByteBuffer record : records) {
+                while (record.hasRemaining()) channel.write(record);
+            }
+            channel.force(false);
+        }
+
+        long snapshotSize = Files.isRegularFile(snapshotFile) ? Files.size(snapshotFile) : 0;
+        if (Files.size(journalFile) > Math.max(snapshotSize, MIN_COMPACTION_SIZE)) {
+            compact(current);
+        }
+    }
+
+    /**
+     * Writes {@code current} as new snapshot and empties the journal
+     *
+     * @param current full state
+     * @throws IOException If the snapshot can not be written
+     */
+    void compact(Map<File, Set<JarStateHolder>> current) throws IOException {
+        // Unique, so scanners sharing the base directory never write into each other's snapshot
+        var tmpSnapshotFile = snapshotFile.resolveSibling(
+                snapshotFile.getFileName() + ".tmp-" + Long.toHexString(ThreadLocalRandom.current().nextLong()));
+        try {
+            try (FileChannel channel = FileChannel.open(tmpSnapshotFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                var header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+                while (header.hasRemaining()) channel.write(header);
+                for (Map.Entry<List<File>, JarStateHolder> entry : flatten(current).entrySet()) {
+                    var record = encodePut(entry.getKey().get(0), entry.getValue());
+                    while (record.hasRemaining()) channel.write(record);
+                }
+                channel.force(true);
+            }
+            Files.move(tmpSnapshotFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmpSnapshotFile);
+            throw e;
+        }
+        // Replaying the old journal over the new snapshot is harmless, so a crash before this line loses nothing
+        Files.deleteIfExists(journalFile);
+    }
+
+    /**
+     * Consumes the header of a snapshot or journal
+     *
+     * @return true if {@code buf} starts with the magic and version of this format
+     */
+    private static boolean hasHeader(ByteBuffer buf) {
+        return buf.remaining() >= HEADER_SIZE && buf.getInt() == MAGIC && buf.getInt() == VERSION;
+    }
+
+    /**
+     * @param lazy true to leave the entries of every record in {@code buf} and check them on first use, see
+     *             {@link EntryRecord}. Otherwise records are checked right away, for the journal whose tail may be torn
+     * @return Number of bytes holding complete, valid records
+     */
+    private int replay(ByteBuffer buf, Map<File, Map<File, JarStateHolder>> state, boolean lazy) {
+        int validLength = buf.position();
+        var crc = new CRC32();
+        while (buf.remaining() >= 8) {
+            int length = buf.getInt();
+            int checksum = buf.getInt();
+            if (length <= 0 || length > buf.remaining()) break;
+
+            var payload = buf.slice();
+            payload.limit(length);
+            if (!lazy) {
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) break;
+            }
+
+            try {
+                apply(payload, state, lazy ? checksum : null);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                break;
+            }
+            buf.position(buf.position() + length);
+            validLength = buf.position();
+        }
+        return validLength;
+    }
+
+    /**
+     * @param checksum checksum to check the entries against once decoded, {@code null} to decode them right away
+     */
+    private void apply(ByteBuffer payload, Map<File, Map<File, JarStateHolder>> state, Integer checksum) {
+        byte op = payload.get();
+        var directory = new File(getString(payload));
+        var jar = new File(getString(payload));
+        if (op == OP_REMOVE) {
+            var jars = state.get(directory);
+            if (jars != null) jars.remove(jar);
+            return;
+        }
+        if (op != OP_PUT) throw new IllegalArgumentException("Unknown cache record " + op);
+
+        var holder = new JarStateHolder(jar);
+        holder.setFileSize(payload.getLong());
+        holder.setLastModified(payload.getLong());
+        holder.setJarFileHash(getString(payload));
+        holder.setEntrySelectorKey(getString(payload));
+        var unzippedDirectory = getString(payload);
+        holder.setUnzippedDirectory(unzippedDirectory == null ? null : new File(unzippedDirectory));
+        if (checksum != null) {
+            holder.setEntryRecord(new EntryRecord(jar, payload, checksum));
+        } else {
+            holder.setClassEntries(readClassEntries(payload));
+            holder.setResourceEntries(readResourceEntries(payload));
+        }
+        state.computeIfAbsent(directory, k -> new HashMap<>()).put(jar, holder);
+    }
+
+    private static Map<String, String> readClassEntries(ByteBuffer payload) {
+        int classCount = payload.getInt();
+        if (classCount < 0) return null;
+        if (classCount > payload.remaining() / 8) throw new IllegalArgumentException("Corrupt class entry count");
+        Map<String, String> classEntries = new HashMap<>(classCount * 4 / 3 + 1);
+        for (int i = 0; i < classCount; i++) {
+            classEntries.put(getString(payload), getString(payload));
+        }
+        return classEntries;
+    }
+
+    private static List<String> readResourceEntries(ByteBuffer payload) {
+        int resourceCount = payload.getInt();
+        if (resourceCount < 0) return null;
+        if (resourceCount > payload.remaining() / 4) throw new IllegalArgumentException("Corrupt resource entry count");
+        List<String> resourceEntries = new ArrayList<>(resourceCount);
+        for (int i = 0; i < resourceCount; i++) {
+            resourceEntries.add(getString(payload));
+        }
+        return resourceEntries;
+    }
+
+    private ByteBuffer encodePut(File directory, JarStateHolder holder) {
+        var payload = new Encoder()
+                .put(OP_PUT)
+                .putString(directory.getPath())
+                .putString(holder.getZippedJarFile().getPath())
+                .putLong(holder.getFileSize())
+                .putLong(holder.getLastModified())
+                .putString(holder.getJarFileHash())
+                .putString(holder.getEntrySelectorKey())
+                .putString(holder.getUnzippedDirectory() == null ? null : holder.getUnzippedDirectory().getPath());
+        var classEntries = holder.getClassEntries();
+        if (classEntries == null) {
+            payload.putInt(-1);
+        } else {
+            payload.putInt(classEntries.size());
+            for (Map.Entry<String, String> classEntry : classEntries.entrySet()) {
+                payload.putString(classEntry.getKey()).putString(classEntry.getValue());
+            }
+        }
+        var resourceEntries = holder.getResourceEntries();
+        if (resourceEntries == null) {
+            payload.putInt(-1);
+        } else {
+            payload.putInt(resourceEntries.size());
+            for (String resourceEntry : resourceEntries) {
+                payload.putString(resourceEntry);
+            }
+        }
+        return payload.toRecord();
+    }
+
+    private ByteBuffer encodeRemove(File directory, File jar) {
+        return new Encoder()
+                .put(OP_REMOVE)
+                .putString(directory.getPath())
+                .putString(jar.getPath())
+                .toRecord();
+    }
+
+    private static String getString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length == -1) return null;
+        if (length < 0 || length > buf.remaining()) throw new IllegalArgumentException("Corrupt string length");
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isSame(JarStateHolder a, JarStateHolder b) {
+        if (a == null || b == null) return false;
+        return a.equals(b)
+                && a.getFileSize() == b.getFileSize()
+                && a.getLastModified() == b.getLastModified()
+                && Objects.equals(a.getJarFileHash(), b.getJarFileHash())
+                && Objects.equals(a.getEntrySelectorKey(), b.getEntrySelectorKey())
+                && Objects.equals(a.getClassEntries(), b.getClassEntries())
+                && Objects.equals(a.getResourceEntries(), b.getResourceEntries());
+    }
+
+    /**
+     * @return Holders keyed by [plugin directory, jar file]
+     */
+    private static Map<List<File>, JarStateHolder> flatten(Map<File, Set<JarStateHolder>> state) {
+        Map<List<File>, JarStateHolder> res = new HashMap<>();
+        for (Map.Entry<File, Set<JarStateHolder>> directory : state.entrySet()) {
+            for (JarStateHolder holder : directory.getValue()) {
+                res.put(List.of(directory.getKey(), holder.getZippedJarFile()), holder);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Class and resource entries of a snapshot record, left in the mapped snapshot until {@link #decode()}.
+     * The whole record is checked against its checksum first, entries of a corrupt record stay {@code null}, so the
+     * jar gets traversed again
+     */
+    static final class EntryRecord {
+        private final File jarFile;
+        /**
+         * Record payload, positioned at the entries
+         */
+        private final ByteBuffer payload;
+        private final int checksum;
+        private boolean decoded = false;
+        private Map<String, String> classEntries;
+        private List<String> resourceEntries;
+
+        EntryRecord(File jarFile, ByteBuffer payload, int checksum) {
+            this.jarFile = jarFile;
+            this.payload = payload;
+            this.checksum = checksum;
+        }
+
+        synchronized void decode() {
+            if (decoded) return;
+            decoded = true;
+            var crc = new CRC32();
+            crc.update(payload.duplicate().position(0));
+            if ((int) crc.getValue() != checksum) {
+                logger.warn(String.format("Ignoring corrupt cache record of %s, the jar will be traversed again", jarFile));
+                return;
+            }
+            var buf = payload.duplicate();
+            try {
+                var classes = readClassEntries(buf);
+                resourceEntries = readResourceEntries(buf);
+                classEntries = classes;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                logger.warn(String.format("Ignoring corrupt cache record of %s, the jar will be traversed again", jarFile));
+                resourceEntries = null;
+            }
+        }
+
+        synchronized Map<String, String> getClassEntries() {
+            return classEntries;
+        }
+
+        synchronized List<String> getResourceEntries() {
+            return resourceEntries;
+        }
+    }
+
+    /**
+     * Growable buffer for a single record. {@link #toRecord()} prefixes length and CRC32
+     */
+    private static final class Encoder {
+        private ByteBuffer buf = ByteBuffer.allocate(256);
+
+        Encoder put(byte b) {
+            ensure(1).put(b);
+            return this;
+        }
+
+        Encoder putInt(int i) {
+            ensure(4).putInt(i);
+            return this;
+        }
+
+        Encoder putLong(long l) {
+            ensure(8).putLong(l);
+            return this;
+        }
+
+        Encoder putString(String s) {
+            if (s == null) return putInt(-1);
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            ensure(4 + bytes.length).putInt(bytes.length).put(bytes);
+            return this;
+        }
+
+        ByteBuffer toRecord() {
+            buf.flip();
+            var crc = new CRC32();
+            crc.update(buf.duplicate());
+            var record = ByteBuffer.allocate(8 + buf.remaining());
+            record.putInt(buf.remaining()).putInt((int) crc.getValue()).put(buf);
+            return record.flip();
+        }
+
+        private ByteBuffer ensure(int bytes) {
+            if (buf.remaining() < bytes) {
+                var grown = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + bytes));
+                buf.flip();
+                grown.put(buf);
+                buf = grown;
+            }
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package software.kloud.classery.jar;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Content addressed store of extracted jars below {@code <base directory>/unpacked}.
+ * <p>
+ * Every tree is named after the fingerprint of its jar and the {@link EntrySelector} it was extracted with, so the same
+ * jar found in several plugin directories, or by several scanners on the same base directory, is extracted only once.
+ * Trees are written to a {@code .partial-*} directory first and renamed when complete, a tree under its final name is
+ * always complete.
+ * <p>
+ * Scanners reference the trees their scan state points to. {@link #collectGarbage()} deletes trees nobody references
+ * and partial trees left over by failed or killed extractions. One store instance exists per base directory and JVM,
+ * a base directory must not be shared between processes, just like the scan cache
+ */
+public final class UnpackStore {
+    private static final Logger logger = LoggerFactory.getLogger(UnpackStore.class);
+    static final String STORE_DIRECTORY_NAME = "unpacked";
+    private static final String PARTIAL_PREFIX = ".partial-";
+    private static final String GARBAGE_PREFIX = ".garbage-";
+    private static final int KEY_LENGTH = 40;
+    private static final Map<Path, UnpackStore> stores = new ConcurrentHashMap<>();
+    private final Path root;
+    /**
+     * Keys of the trees referenced by every owner, guarded by {@code this}.
+     * Weak, so scanners which were never closed stop referencing their trees once they are unreachable
+     */
+    private final Map<Object, Set<String>> references = new WeakHashMap<>();
+    /**
+     * Extractions in progress by key, guarded by {@code this}
+     */
+    private final Map<String, CompletableFuture<Void>> extracting = new HashMap<>();
+
+    private UnpackStore(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * @return The store below {@code baseDirectory}, created if missing
+     * @throws IOException If the store directory can not be created
+     */
+    public static UnpackStore forBaseDirectory(File baseDirectory) throws IOException {
+        var root = baseDirectory.toPath().toAbsolutePath().normalize().resolve(STORE_DIRECTORY_NAME);
+        Files.createDirectories(root);
+        return stores.computeIfAbsent(root.toRealPath(), UnpackStore::new);
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @return Name of the tree holding the entries of a jar with {@code jarFileHash} selected by {@code entrySelectorKey}
+     */
+    static String keyOf(String jarFileHash, String entrySelectorKey) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256")
+                    .digest((jarFileHash + '\n' + entrySelectorKey).getBytes(StandardCharsets.UTF_8));
+            var key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.substring(0, KEY_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Returns the tree stored under {@code key} and references it for {@code owner}.
+     * If the tree does not exist yet it gets extracted by {@code extraction}. Concurrent calls for the same key wait
+     * for a single extraction
+     *
+     * @param owner      scanner referencing the tree
+     * @param key        see {@link #keyOf(String, String)}
+     * @param extraction writes the entries into the given empty directory
+     * @return Complete tree
+     * @throws IOException If the extraction failed
+     */
+    File acquire(Object owner, String key, Extraction extraction) throws IOException {
+        var target = root.resolve(key);
+        while (true) {
+            CompletableFuture<Void> pending;
+            boolean extractHere = false;
+            synchronized (this) {
+                if (Files.isDirectory(target)) {
+                    references.computeIfAbsent(owner, o -> new HashSet<>()).add(key);
+                    return target.toFile();
+                }
+                pending = extracting.get(key);
+                if (pending == null) {
+                    pending = new CompletableFuture<>();
+                    extracting.put(key, pending);
+                    extractHere = true;
+                }
+            }
+
+            if (!extractHere) {
+                // Whether the other extraction failed or not, the next round either finds the tree or extracts it
+                awaitQuietly(pending);
+                continue;
+            }
+
+            var partial = root.resolve(PARTIAL_PREFIX + key + "-" + Long.toHexString(ThreadLocalRandom.current().nextLong()));
+            try {
+                Files.createDirectory(partial);
+                extraction.extractTo(partial);
+                synchronized (this) {
+                    Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+                    references.computeIfAbsent(owner, o -> new HashSet<>()).add(key);
+                }
+                return target.toFile();
+            } catch (IOException | RuntimeException e) {
+                deleteQuietly(partial);
+                throw e;
+            } finally {
+                synchronized (this) {
+                    extracting.remove(key);
+                }
+                pending.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Makes {@code owner} reference exactly the stored trees among {@code directories}, releasing all others it referenced.
+     * Directories outside of the store are ignored
+     */
+    synchronized void retainOnly(Object owner, Collection<File> directories) {
+        Set<String> keys = new HashSet<>();
+        for (File directory : directories) {
+            var key = keyOf(directory);
+            if (key != null) keys.add(key);
+        }
+        if (keys.isEmpty()) {
+            references.remove(owner);
+        } else {
+            references.put(owner, keys);
+        }
+    }
+
+    /**
+     * Drops all references of {@code owner}. Its trees get deleted by the next {@link #collectGarbage()} unless someone
+     * else references them
+     */
+    synchronized void releaseAll(Object owner) {
+        references.remove(owner);
+    }
+
+    /**
+     * @return true if {@code directory} is a tree of this store, whether it exists or not
+     */
+    boolean isStored(File directory) {
+        return keyOf(directory) != null;
+    }
+
+    /**
+     * @return Number of owners referencing the tree, 0 for directories outside of the store
+     */
+    public synchronized int getReferenceCount(File directory) {
+        var key = keyOf(directory);
+        if (key == null) return 0;
+        int count = 0;
+        for (Set<String> keys : references.values()) {
+            if (keys.contains(key)) count++;
+        }
+        return count;
+    }
+
+    private String keyOf(File directory) {
+        var path = directory.toPath().toAbsolutePath().normalize();
+        var parent = path.getParent();
+        var name = path.getFileName().toString();
+        if (parent == null || name.length() != KEY_LENGTH || name.startsWith(".")) return null;
+        try {
+            // The base directory may have been given through a symlink or a relative path
+            return root.equals(parent) || Files.isSameFile(root, parent) ? name : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Deletes unreferenced trees, partial trees of extractions which are not running anymore and anything else not
+     * belonging into the store. Trees are renamed away before being deleted, so a concurrent {@link #acquire} never
+     * sees a half deleted tree
+     *
+     * @return Number of deleted directories
+     * @throws IOException If the store can not be listed
+     */
+    public int collectGarbage() throws IOException {
+        List<Path> garbage = new ArrayList<>();
+        synchronized (this) {
+            Set<String> referenced = new HashSet<>();
+            references.values().forEach(referenced::addAll);
+
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(root)) {
+                for (Path child : children) {
+                    var name = child.getFileName().toString();
+                    if (name.startsWith(GARBAGE_PREFIX)) {
+                        garbage.add(child);
+                    } else if (name.startsWith(PARTIAL_PREFIX)) {
+                        var key = name.substring(PARTIAL_PREFIX.length(), Math.min(name.length(), PARTIAL_PREFIX.length() + KEY_LENGTH));
+                        if (!extracting.containsKey(key)) garbage.add(child);
+                    } else if (!referenced.contains(name) && !extracting.containsKey(name)) {
+                        var renamed = root.resolve(GARBAGE_PREFIX + name + "-" + Long.toHexString(ThreadLocalRandom.current().nextLong()));
+                        Files.move(child, renamed, StandardCopyOption.ATOMIC_MOVE);
+                        garbage.add(renamed);
+                    }
+                }
+            }
+        }
+
+        int deleted = 0;
+        for (Path path : garbage) {
+            if (deleteQuietly(path)) deleted++;
+        }
+        if (deleted > 0) {
+            logger.info(String.format("Deleted %d unused trees from %s", deleted, root));
+        }
+        return deleted;
+    }
+
+    private static void awaitQuietly(CompletableFuture<Void> pending) throws IOException {
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Waiting for extraction was interrupted", e);
+        } catch (ExecutionException e) {
+            // Never completed exceptionally
+        }
+    }
+
+    private static boolean deleteQuietly(Path path) {
+        try {
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                FileUtils.deleteDirectory(path.toFile());
+            } else {
+                Files.deleteIfExists(path);
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warn(String.format("Could not delete %s, retrying on next collection", path), e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the entries of a jar into an empty directory
+     */
+    @FunctionalInterface
+    interface Extraction {
+        void extractTo(Path directory) throws IOException;
+    }
+}
@@ -0,0 +1,608 @@
+package software.kloud.classery.jar;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read only zip archive on top of a {@link ByteBuffer}, either a memory mapped file or the contents of a nested archive.
+ * <p>
+ * Unlike {@link java.util.zip.ZipFile} this does not need a file, so archives nested inside another archive,
+ * like {@code BOOT-INF/lib/*.jar}, are read without writing them anywhere. A STORED nested archive is a slice of the
+ * outer mapping and costs no copy at all. Archives with a prepended launcher script are supported.
+ * <p>
+ * The central directory is parsed once into primitive arrays, entries are addressed by their index from
+ * {@code 0} to {@link #size()}. Names stay encoded in the mapping and are only decoded by {@link #getName(int)},
+ * lookups by name of ASCII names do not allocate. STORED entries are handed out as slices of the mapping,
+ * DEFLATED ones are inflated straight into their result array with {@link Inflater}s taken from a small shared pool.
+ * All methods are thread safe
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ZipArchive implements Closeable {
+    /**
+     * Separates the name of a nested archive from the name of an entry inside of it, e.g. {@code BOOT-INF/lib/a.jar!/b/C.class}
+     */
+    public static final String NESTED_SEPARATOR = "!/";
+    private static final List<String> nestedLibraryDirectories = List.of("BOOT-INF/lib/", "WEB-INF/lib/");
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    /**
+     * Idle inflaters. Bounded, so short lived threads, e.g. virtual ones, do not each keep a native inflater alive
+     */
+    private static final BlockingQueue<Inflation> idleInflations =
+            new ArrayBlockingQueue<>(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    private final String name;
+    private final ByteBuffer data;
+    private final int entryCount;
+    private final int[] nameOffsets;
+    private final int[] nameLengths;
+    private final int[] nameHashes;
+    private final int[] methods;
+    private final int[] crcs;
+    private final int[] compressedSizes;
+    private final long[] sizes;
+    private final int[] localHeaderOffsets;
+    /**
+     * Open addressing table of entry index + 1 by name hash, {@code 0} marks a free slot
+     */
+    private final int[] lookupTable;
+    private volatile boolean closed = false;
+
+    private ZipArchive(String name, ByteBuffer data, int entryCount) {
+        this.name = name;
+        this.data = data;
+        this.entryCount = entryCount;
+        this.nameOffsets = new int[entryCount];
+        this.nameLengths = new int[entryCount];
+        this.nameHashes = new int[entryCount];
+        this.methods = new int[entryCount];
+        this.crcs = new int[entryCount];
+        this.compressedSizes = new int[entryCount];
+        this.sizes = new long[entryCount];
+        this.localHeaderOffsets = new int[entryCount];
+        this.lookupTable = new int[Integer.highestOneBit(Math.max(entryCount, 1) * 2 - 1) << 1];
+    }
+
+    /**
+     * Memory maps {@code file} and reads its central directory
+     *
+     * @param file zip or jar file, smaller than 2 GiB
+     * @return opened archive
+     * @throws IOException If the file can not be mapped or is not a valid archive
+     */
+    public static ZipArchive open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(String.format("%s is too large to be mapped", file));
+            }
+            return wrap(file.getPath(), channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @param name name used in error messages
+     * @param data complete archive, not modified
+     * @return opened archive
+     * @throws IOException If {@code data} is not a valid archive
+     */
+    public static ZipArchive wrap(String name, ByteBuffer data) throws IOException {
+        var buf = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            return readCentralDirectory(name, buf);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException(String.format("Corrupt zip archive %s", name), e);
+        }
+    }
+
+    /**
+     * @return true for library jars of Spring Boot jars and wars, e.g. {@code BOOT-INF/lib/a.jar}
+     */
+    public static boolean isNestedLibrary(String entryName) {
+        if (!entryName.endsWith(".jar")) return false;
+        for (String directory : nestedLibraryDirectories) {
+            if (entryName.startsWith(directory) && entryName.indexOf('/', directory.length()) < 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return Number of entries, directories included
+     */
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * @param entryName name of an entry
+     * @return Index of the entry, the first one if the name is used twice, {@code -1} if there is none
+     */
+    public int indexOf(String entryName) {
+        if (!isAscii(entryName)) return indexOf(entryName.getBytes(StandardCharsets.UTF_8));
+
+        int hash = 0;
+        for (int i = 0; i < entryName.length(); i++) {
+            hash = 31 * hash + entryName.charAt(i);
+        }
+        int mask = lookupTable.length - 1;
+        for (int slot = mix(hash) & mask; lookupTable[slot] != 0; slot = (slot + 1) & mask) {
+            int index = lookupTable[slot] - 1;
+            if (nameHashes[index] == hash && nameEquals(index, entryName)) return index;
+        }
+        return -1;
+    }
+
+    public boolean contains(String entryName) {
+        return indexOf(entryName) >= 0;
+    }
+
+    /**
+     * Decodes the name of an entry. Prefer {@link #nameEndsWith(int, String)} for filtering, it does not allocate
+     */
+    public String getName(int index) {
+        byte[] bytes = new byte[nameLengths[index]];
+        data.duplicate().position(nameOffsets[index]).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Read only slice holding the UTF-8 encoded name of an entry
+     */
+    public ByteBuffer getRawName(int index) {
+        return slice(nameOffsets[index], nameLengths[index]).asReadOnlyBuffer();
+    }
+
+    /**
+     * @param suffix ASCII suffix, e.g. {@code .class}
+     * @return true if the name of the entry ends with {@code suffix}
+     */
+    public boolean nameEndsWith(int index, String suffix) {
+        int length = nameLengths[index];
+        if (length < suffix.length()) return false;
+        int offset = nameOffsets[index] + length - suffix.length();
+        for (int i = 0; i < suffix.length(); i++) {
+            if (data.get(offset + i) != suffix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    public boolean isDirectory(int index) {
+        return nameLengths[index] > 0 && data.get(nameOffsets[index] + nameLengths[index] - 1) == '/';
+    }
+
+    /**
+     * @return Uncompressed size of the entry
+     */
+    public long getSize(int index) {
+        return sizes[index];
+    }
+
+    public long getCompressedSize(int index) {
+        return compressedSizes[index];
+    }
+
+    /**
+     * @return CRC-32 of the uncompressed entry as stored in the central directory
+     */
+    public long getCrc(int index) {
+        return crcs[index] & ZIP64_MAGIC;
+    }
+
+    /**
+     * Reads an entry. STORED entries are returned as a slice of the archive without copying
+     *
+     * @param entryName name of a file entry
+     * @return Read only buffer holding the uncompressed entry, owned by the caller
+     * @throws IOException If the entry does not exist or can not be decompressed
+     */
+    public ByteBuffer read(String entryName) throws IOException {
+        return read(requireIndex(entryName));
+    }
+
+    /**
+     * @see #read(String)
+     */
+    public ByteBuffer read(int index) throws IOException {
+        if (isStored(index)) return getCompressedData(index).asReadOnlyBuffer();
+        return ByteBuffer.wrap(inflate(index)).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return Copy of the uncompressed entry
+     * @throws IOException If the entry does not exist or can not be decompressed
+     */
+    public byte[] readBytes(String entryName) throws IOException {
+        return readBytes(requireIndex(entryName));
+    }
+
+    /**
+     * @see #readBytes(String)
+     */
+    public byte[] readBytes(int index) throws IOException {
+        if (!isStored(index)) return inflate(index);
+        var buf = getCompressedData(index);
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Inflates a DEFLATED entry into an array of exactly its size
+     */
+    private byte[] inflate(int index) throws IOException {
+        if (sizes[index] > Integer.MAX_VALUE - 8) {
+            throw new IOException(String.format("Entry %s in %s is too large", getName(index), name));
+        }
+        byte[] out = new byte[(int) sizes[index]];
+        var state = borrowInflation();
+        try {
+            var inflater = state.start(getCompressedData(index));
+            int inflated = 0;
+            while (inflated < out.length && !inflater.finished()) {
+                int read = inflater.inflate(out, inflated, out.length - inflated);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                inflated += read;
+            }
+            if (inflated != out.length) {
+                throw new IOException(String.format("Entry %s in %s is truncated", getName(index), name));
+            }
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException(String.format("Corrupt entry %s in %s", getName(index), name), e);
+        } finally {
+            releaseInflation(state);
+        }
+    }
+
+    /**
+     * Writes the uncompressed entry to {@code channel}. STORED entries are written straight from the mapping,
+     * DEFLATED ones are inflated chunk wise through a pooled buffer, so the size of the entry does not matter
+     *
+     * @param index   index of a file entry
+     * @param channel target, not closed
+     * @return Number of bytes written
+     * @throws IOException If the entry can not be decompressed or written
+     */
+    public long transferTo(int index, WritableByteChannel channel) throws IOException {
+        var compressed = getCompressedData(index);
+        if (isStored(index)) {
+            long written = 0;
+            while (compressed.hasRemaining()) {
+                written += channel.write(compressed);
+            }
+            return written;
+        }
+
+        var state = borrowInflation();
+        var chunk = state.chunk;
+        long written = 0;
+        try {
+            var inflater = state.start(compressed);
+            while (!inflater.finished()) {
+                int read = inflater.inflate(chunk.array());
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                chunk.clear().limit(read);
+                while (chunk.hasRemaining()) {
+                    written += channel.write(chunk);
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(String.format("Corrupt entry %s in %s", getName(index), name), e);
+        } finally {
+            releaseInflation(state);
+        }
+        if (written != sizes[index]) {
+            throw new IOException(String.format("Entry %s in %s is truncated", getName(index), name));
+        }
+        return written;
+    }
+
+    /**
+     * Opens an archive stored inside of this one. Nothing gets written to disk
+     *
+     * @param entryName name of the nested archive, e.g. {@code BOOT-INF/lib/a.jar}
+     * @return opened nested archive
+     * @throws IOException If the entry does not exist or is not a valid archive
+     */
+    public ZipArchive openNested(String entryName) throws IOException {
+        return wrap(name + NESTED_SEPARATOR + entryName, read(entryName));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Rejects further reads. Mappings can not be released explicitly, they are freed once the archive and all buffers
+     * handed out are unreachable
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    private int requireIndex(String entryName) throws IOException {
+        int index = indexOf(entryName);
+        if (index < 0) {
+            throw new IOException(String.format("No entry %s in %s", entryName, name));
+        }
+        return index;
+    }
+
+    private boolean isStored(int index) {
+        return methods[index] == METHOD_STORED;
+    }
+
+    private ByteBuffer getCompressedData(int index) throws IOException {
+        if (closed) {
+            throw new IOException(String.format("%s is closed", name));
+        }
+        int localHeader = localHeaderOffsets[index];
+        try {
+            if (data.getInt(localHeader) != LOCAL_HEADER_SIGNATURE) {
+                throw new IOException(String.format("Corrupt local header of %s in %s", getName(index), name));
+            }
+            if (methods[index] != METHOD_STORED && methods[index] != METHOD_DEFLATED) {
+                throw new IOException(String.format("Unsupported compression method %d of %s in %s",
+                        methods[index], getName(index), name));
+            }
+            int dataStart = localHeader + 30 + (data.getShort(localHeader + 26) & 0xFFFF) + (data.getShort(localHeader + 28) & 0xFFFF);
+            return slice(dataStart, compressedSizes[index]);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException(String.format("Corrupt entry %s in %s", getName(index), name), e);
+        }
+    }
+
+    private int indexOf(byte[] entryName) {
+        int hash = 0;
+        for (byte b : entryName) {
+            hash = 31 * hash + b;
+        }
+        int mask = lookupTable.length - 1;
+        for (int slot = mix(hash) & mask; lookupTable[slot] != 0; slot = (slot + 1) & mask) {
+            int index = lookupTable[slot] - 1;
+            if (nameHashes[index] == hash && nameEquals(index, entryName)) return index;
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(int index, String asciiName) {
+        if (nameLengths[index] != asciiName.length()) return false;
+        int offset = nameOffsets[index];
+        for (int i = 0; i < asciiName.length(); i++) {
+            if (data.get(offset + i) != asciiName.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private boolean nameEquals(int index, byte[] name) {
+        if (nameLengths[index] != name.length) return false;
+        int offset = nameOffsets[index];
+        for (int i = 0; i < name.length; i++) {
+            if (data.get(offset + i) != name[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Spreads the bits of a string style hash, names of one directory only differ in their last few characters
+     */
+    private static int mix(int hash) {
+        int mixed = hash * 0x9E3779B9;
+        return mixed ^ (mixed >>> 16);
+    }
+
+    private static ZipArchive readCentralDirectory(String name, ByteBuffer buf) throws IOException {
+        int end = findEnd(buf);
+        if (end < 0) {
+            throw new IOException(String.format("%s is not a zip archive", name));
+        }
+        long entryCount = buf.getShort(end + 10) & 0xFFFF;
+        long centralDirectorySize = buf.getInt(end + 12) & ZIP64_MAGIC;
+        long centralDirectoryOffset = buf.getInt(end + 16) & ZIP64_MAGIC;
+        int centralDirectoryEnd = end;
+
+        int locator = end - ZIP64_LOCATOR_SIZE;
+        if (locator >= ZIP64_END_SIZE && buf.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+            int zip64End = findZip64End(name, buf, locator);
+            if (zip64End >= 0) {
+                entryCount = buf.getLong(zip64End + 32);
+                centralDirectorySize = buf.getLong(zip64End + 40);
+                centralDirectoryOffset = buf.getLong(zip64End + 48);
+                centralDirectoryEnd = zip64End;
+            }
+        }
+
+        // Offsets are relative to the start of the zip data, which is not the start of the file if a script got prepended
+        long prefix = centralDirectoryEnd - centralDirectorySize - centralDirectoryOffset;
+        // Every central directory header takes at least 46 bytes, which bounds the arrays for corrupt counts
+        if (prefix < 0 || entryCount < 0 || entryCount > centralDirectorySize / 46) {
+            throw new IOException(String.format("Corrupt central directory in %s", name));
+        }
+
+        var archive = new ZipArchive(name, buf, (int) entryCount);
+        int position = (int) (prefix + centralDirectoryOffset);
+        for (int i = 0; i < archive.entryCount; i++) {
+            if (buf.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException(String.format("Corrupt central directory in %s", name));
+            }
+            int method = buf.getShort(position + 10) & 0xFFFF;
+            int crc = buf.getInt(position + 16);
+            long compressedSize = buf.getInt(position + 20) & ZIP64_MAGIC;
+            long size = buf.getInt(position + 24) & ZIP64_MAGIC;
+            int nameLength = buf.getShort(position + 28) & 0xFFFF;
+            int extraLength = buf.getShort(position + 30) & 0xFFFF;
+            int commentLength = buf.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = buf.getInt(position + 42) & ZIP64_MAGIC;
+
+            if (size == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+                // The ZIP64 extra field holds exactly the values that overflowed, in this order
+                int extra = findExtra(buf, position + 46 + nameLength, extraLength, 0x0001);
+                if (extra >= 0) {
+                    if (size == ZIP64_MAGIC) {
+                        size = buf.getLong(extra);
+                        extra += 8;
+                    }
+                    if (compressedSize == ZIP64_MAGIC) {
+                        compressedSize = buf.getLong(extra);
+                        extra += 8;
+                    }
+                    if (localHeaderOffset == ZIP64_MAGIC) {
+                        localHeaderOffset = buf.getLong(extra);
+                    }
+                }
+            }
+            // The archive is smaller than 2 GiB, so anything valid fits into an int
+            if (compressedSize > buf.limit() || prefix + localHeaderOffset > buf.limit() || size < 0) {
+                throw new IOException(String.format("Corrupt central directory in %s", name));
+            }
+
+            archive.nameOffsets[i] = position + 46;
+            archive.nameLengths[i] = nameLength;
+            archive.methods[i] = method;
+            archive.crcs[i] = crc;
+            archive.compressedSizes[i] = (int) compressedSize;
+            archive.sizes[i] = size;
+            archive.localHeaderOffsets[i] = (int) (prefix + localHeaderOffset);
+            archive.addToLookupTable(i);
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return archive;
+    }
+
+    /**
+     * Computes the hash of the encoded name, equal to {@link String#hashCode()} for ASCII names,
+     * and adds the entry unless an earlier one has the same name
+     */
+    private void addToLookupTable(int index) {
+        int hash = 0;
+        int offset = nameOffsets[index];
+        for (int i = 0; i < nameLengths[index]; i++) {
+            hash = 31 * hash + data.get(offset + i);
+        }
+        nameHashes[index] = hash;
+
+        int mask = lookupTable.length - 1;
+        int slot = mix(hash) & mask;
+        for (; lookupTable[slot] != 0; slot = (slot + 1) & mask) {
+            int other = lookupTable[slot] - 1;
+            if (nameHashes[other] == hash && nameLengths[other] == nameLengths[index]
+                    && slice(nameOffsets[other], nameLengths[other]).equals(slice(offset, nameLengths[index]))) {
+                return;
+            }
+        }
+        lookupTable[slot] = index + 1;
+    }
+
+    /**
+     * The locator holds the offset of the ZIP64 end record relative to the start of the zip data. Like the central
+     * directory, the record is shifted by a prepended script, so the record directly preceding the locator is
+     * preferred over the stored offset
+     *
+     * @return Position of the ZIP64 end record, -1 if there is none
+     * @throws IOException If the stored offset lies beyond the locator
+     */
+    private static int findZip64End(String name, ByteBuffer buf, int locator) throws IOException {
+        long offset = buf.getLong(locator + 8);
+        if (offset < 0 || offset > locator - ZIP64_END_SIZE) {
+            throw new IOException(String.format("Corrupt ZIP64 end locator in %s", name));
+        }
+        int adjacent = locator - ZIP64_END_SIZE;
+        if (buf.getInt(adjacent) == ZIP64_END_SIGNATURE) return adjacent;
+        // A record with extensible data does not touch the locator, it can only be found without a prefix
+        if (buf.getInt((int) offset) == ZIP64_END_SIGNATURE) return (int) offset;
+        return -1;
+    }
+
+    private static int findEnd(ByteBuffer buf) {
+        int lowest = Math.max(0, buf.limit() - END_SIZE - MAX_COMMENT_SIZE);
+        for (int position = buf.limit() - END_SIZE; position >= lowest; position--) {
+            if (buf.getInt(position) != END_SIGNATURE) continue;
+            if (position + END_SIZE + (buf.getShort(position + 20) & 0xFFFF) == buf.limit()) return position;
+
+            // Like java.util.zip, accept padding after the archive if the record points at real headers
+            long centralDirectory = position - (buf.getInt(position + 12) & ZIP64_MAGIC);
+            long localHeader = centralDirectory - (buf.getInt(position + 16) & ZIP64_MAGIC);
+            if (localHeader >= 0 && buf.getInt((int) centralDirectory) == CENTRAL_HEADER_SIGNATURE
+                    && buf.getInt((int) localHeader) == LOCAL_HEADER_SIGNATURE) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Position of the data of the extra field with the given id, -1 if missing
+     */
+    private static int findExtra(ByteBuffer buf, int start, int length, int id) {
+        int position = start;
+        while (position + 4 <= start + length) {
+            int headerId = buf.getShort(position) & 0xFFFF;
+            int dataSize = buf.getShort(position + 2) & 0xFFFF;
+            if (headerId == id) return position + 4;
+            position += 4 + dataSize;
+        }
+        return -1;
+    }
+
+    private ByteBuffer slice(int position, int length) {
+        var duplicate = data.duplicate();
+        duplicate.position(position).limit(position + length);
+        return duplicate.slice();
+    }
+
+    private static Inflation borrowInflation() {
+        var state = idleInflations.poll();
+        return state != null ? state : new Inflation();
+    }
+
+    /**
+     * Returns an inflater to the pool, or frees its native memory right away if the pool is full
+     */
+    private static void releaseInflation(Inflation state) {
+        if (!idleInflations.offer(state)) state.inflater.end();
+    }
+
+    /**
+     * Inflater and the fixed size chunk buffer used for {@link #transferTo(int, WritableByteChannel)}
+     */
+    private static final class Inflation {
+        private static final int CHUNK_SIZE = 64 * 1024;
+        private final Inflater inflater = new Inflater(true);
+        private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+
+        Inflater start(ByteBuffer compressed) {
+            inflater.reset();
+            inflater.setInput(compressed);
+            return inflater;
+        }
+    }
+}
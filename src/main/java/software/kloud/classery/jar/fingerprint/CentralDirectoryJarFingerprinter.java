@@ -0,0 +1,49 @@
+package software.kloud.classery.jar.fingerprint;
+
+import software.kloud.classery.jar.ZipArchive;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hashes only the central directory of the jar: name, CRC and sizes of every entry.
+ * Entry contents are never read, cost grows with the number of entries instead of the file size.
+ * Relies on the CRCs stored in the jar, so it does not notice corruption of the entry data itself.
+ * Names are digested in their encoded form straight from the memory mapped jar
+ */
+public class CentralDirectoryJarFingerprinter implements JarFingerprinter {
+    @Override
+    public String getId() {
+        return "cendir";
+    }
+
+    @Override
+    public String fingerprint(File jarFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is a mandatory algorithm of every JVM", e);
+        }
+
+        var buf = ByteBuffer.allocate(24);
+        try (var archive = ZipArchive.open(jarFile)) {
+            for (int i = 0; i < archive.size(); i++) {
+                digest.update(archive.getRawName(i));
+                digest.update((byte) 0);
+                buf.clear();
+                buf.putLong(archive.getCrc(i)).putLong(archive.getSize(i)).putLong(archive.getCompressedSize(i));
+                digest.update(buf.array());
+            }
+        }
+
+        var sb = new StringBuilder(32);
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
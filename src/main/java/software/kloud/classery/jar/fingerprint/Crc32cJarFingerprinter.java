@@ -0,0 +1,40 @@
+package software.kloud.classery.jar.fingerprint;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Non cryptographic CRC32C over the whole file, combined with its length.
+ * CRC32C is a JVM intrinsic on current hardware and runs close to disk speed
+ */
+public class Crc32cJarFingerprinter implements JarFingerprinter {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final ThreadLocal<ByteBuffer> readBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    @Override
+    public String getId() {
+        return "crc32c";
+    }
+
+    @Override
+    public String fingerprint(File jarFile) throws IOException {
+        var crc = new CRC32C();
+        var buf = readBuffer.get();
+        long length = 0;
+        try (FileChannel channel = FileChannel.open(jarFile.toPath(), StandardOpenOption.READ)) {
+            buf.clear();
+            int read;
+            while ((read = channel.read(buf)) != -1) {
+                buf.flip();
+                crc.update(buf);
+                buf.clear();
+                length += read;
+            }
+        }
+        return String.format("%08x%016x", crc.getValue(), length);
+    }
+}
@@ -0,0 +1,25 @@
+package software.kloud.classery.jar.fingerprint;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Strategy to compute a content fingerprint of a jar. Used by the scanner to decide whether a jar changed.
+ * <p>
+ * Fingerprints of different strategies are never equal, the scanner stores them as {@code <id>:<fingerprint>}.
+ * Switching the strategy therefore invalidates all cached jars once.
+ * Implementations have to be thread safe, fingerprints get computed on the scanner's worker pool
+ */
+public interface JarFingerprinter {
+    /**
+     * @return Short, stable identifier of this strategy, stored in the scan cache
+     */
+    String getId();
+
+    /**
+     * @param jarFile zipped jar
+     * @return Fingerprint of the jar, hex encoded
+     * @throws IOException If the jar can not be read
+     */
+    String fingerprint(File jarFile) throws IOException;
+}
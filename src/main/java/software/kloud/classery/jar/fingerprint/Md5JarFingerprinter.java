@@ -0,0 +1,21 @@
+package software.kloud.classery.jar.fingerprint;
+
+import software.kloud.common.file.hash.FileHasher;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * MD5 over the whole file. Slowest option, kept as default for compatibility
+ */
+public class Md5JarFingerprinter implements JarFingerprinter {
+    @Override
+    public String getId() {
+        return "md5";
+    }
+
+    @Override
+    public String fingerprint(File jarFile) throws IOException {
+        return new FileHasher(jarFile).hashMD5();
+    }
+}
@@ -0,0 +1,157 @@
+package software.kloud.classery.loader;
+
+import software.kloud.classery.jar.ClassFileHolder;
+import software.kloud.classery.jar.ClassIndex;
+import software.kloud.classery.jar.JarStateHolder;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Consumes jars from {@link software.kloud.classery.jar.JarFileScanner#publish} one at a time, indexes them and defines
+ * every class whose super types are known by now. Defined classes get submitted to {@code publisher}, which blocks
+ * while the downstream buffer is full and thereby holds back the next request to the scanner
+ */
+class ClassPipeline implements Flow.Subscriber<JarStateHolder> {
+    private final ClasseryLoader loader;
+    private final SubmissionPublisher<Class<?>> publisher;
+    private final Map<String, ClassFileHolder> index = new ConcurrentHashMap<>();
+    private final ClassIndex packageIndex = new ClassIndex();
+    private final ResourceIndex resourceIndex = new ResourceIndex();
+    /**
+     * Indexed classes which could not be defined yet, because a super type is still missing
+     */
+    private final Map<String, PendingClass> pending = new HashMap<>();
+    /**
+     * Names of pending classes by the super type they wait for, which is missing or pending itself
+     */
+    private final Map<String, Set<String>> waitingFor = new HashMap<>();
+    private Flow.Subscription subscription;
+
+    ClassPipeline(ClasseryLoader loader, SubmissionPublisher<Class<?>> publisher) {
+        this.loader = loader;
+        this.publisher = publisher;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        loader.replaceClassIndex(index, packageIndex, resourceIndex);
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(JarStateHolder jar) {
+        try {
+            Map<String, ClassFileHolder> indexed = new HashMap<>();
+            var classFiles = loader.findClassFiles(jar);
+            for (ClassFileHolder classFileHolder : classFiles) {
+                if (loader.addToIndex(index, packageIndex, jar, classFileHolder)) {
+                    indexed.put(classFileHolder.getAbsoluteClassName(), classFileHolder);
+                }
+            }
+            loader.addJar(resourceIndex, jar, classFiles);
+            define(indexed);
+        } catch (Exception e) {
+            subscription.cancel();
+            publisher.closeExceptionally(e);
+            return;
+        }
+
+        if (publisher.isClosed() || !publisher.hasSubscribers()) {
+            subscription.cancel();
+        } else {
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        publisher.closeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        try {
+            if (!pending.isEmpty()) {
+                List<MissingDependency> missingDependencies = new ArrayList<>();
+                for (PendingClass pendingClass : pending.values()) {
+                    missingDependencies.addAll(pendingClass.missingDependencies);
+                }
+                missingDependencies.sort(Comparator.comparing(MissingDependency::getClassName)
+                        .thenComparing(MissingDependency::getDependencyName));
+                publisher.closeExceptionally(new UnresolvedDependencyException(missingDependencies));
+                return;
+            }
+            publisher.close();
+        } catch (Exception e) {
+            publisher.closeExceptionally(e);
+        }
+    }
+
+    /**
+     * Plans and defines the classes of a jar together with the pending classes they unblock. Pending classes are
+     * planned from the headers parsed when they got blocked, without reading them again
+     */
+    private void define(Map<String, ClassFileHolder> indexed) throws Exception {
+        Map<String, ClassFileHolder> classes = new HashMap<>(indexed);
+        Map<String, DefinitionPlanner.ParsedClass> parsed = new HashMap<>();
+        for (String className : indexed.keySet()) {
+            wake(className, classes, parsed);
+        }
+
+        var plan = loader.planFor(classes, parsed);
+        List<Class<?>> defined = loader.define(plan);
+        // Only blocked classes stay pending, skipped ones like module descriptors would never resolve
+        Map<String, List<MissingDependency>> blocked = new HashMap<>();
+        for (MissingDependency missingDependency : plan.getMissingDependencies()) {
+            blocked.computeIfAbsent(missingDependency.getClassName(), k -> new ArrayList<>()).add(missingDependency);
+        }
+        for (Map.Entry<String, List<MissingDependency>> blockedClass : blocked.entrySet()) {
+            var className = blockedClass.getKey();
+            var parsedClass = plan.getParsedClass(className);
+            if (parsedClass == null) continue;
+            pending.put(className, new PendingClass(classes.get(className), parsedClass, blockedClass.getValue()));
+            for (MissingDependency missingDependency : blockedClass.getValue()) {
+                waitingFor.computeIfAbsent(missingDependency.getDependencyName(), k -> new HashSet<>()).add(className);
+            }
+        }
+        for (Class<?> clazz : defined) {
+            publisher.submit(clazz);
+        }
+    }
+
+    /**
+     * Moves the pending classes waiting for {@code className}, and transitively the ones waiting for them, into the
+     * next plan
+     */
+    private void wake(String className, Map<String, ClassFileHolder> classes, Map<String, DefinitionPlanner.ParsedClass> parsed) {
+        Deque<String> unblocked = new ArrayDeque<>();
+        unblocked.add(className);
+        while (!unblocked.isEmpty()) {
+            var waiting = waitingFor.remove(unblocked.poll());
+            if (waiting == null) continue;
+            for (String waitingClass : waiting) {
+                var pendingClass = pending.remove(waitingClass);
+                if (pendingClass == null) continue;
+                classes.put(waitingClass, pendingClass.classFileHolder);
+                parsed.put(waitingClass, pendingClass.parsedClass);
+                unblocked.add(waitingClass);
+            }
+        }
+    }
+
+    private static final class PendingClass {
+        private final ClassFileHolder classFileHolder;
+        private final DefinitionPlanner.ParsedClass parsedClass;
+        private final List<MissingDependency> missingDependencies;
+
+        PendingClass(ClassFileHolder classFileHolder, DefinitionPlanner.ParsedClass parsedClass, List<MissingDependency> missingDependencies) {
+            this.classFileHolder = classFileHolder;
+            this.parsedClass = parsedClass;
+            this.missingDependencies = missingDependencies;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package software.kloud.classery.loader;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.kloud.classery.jar.ClassFileHolder;
+import software.kloud.classery.jar.JarStateHolder;
+import software.kloud.classery.metrics.Instrumentation;
+import software.kloud.classery.metrics.Phase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs the {@link ClassTransformer}s of a loader between reading and defining a class.
+ * <p>
+ * Transformed class files are cached in {@code <cache directory>/<key>/<binary name>.class}, the key being derived from the
+ * hash of the jar and the versions of all transformers. A class of an unchanged jar is neither read from the jar nor
+ * transformed again. Several loaders may share a cache directory, each one references the keys of its own jars.
+ * {@link #deleteStale(Collection)} deletes directories no loader of this JVM references, i.e. of jars which are gone or
+ * of older transformer versions
+ */
+class ClassTransformation {
+    private static final Logger logger = LoggerFactory.getLogger(ClassTransformation.class);
+    private static final int KEY_LENGTH = 40;
+    /**
+     * Keys referenced by every transformation, by real cache directory. Inner maps are weak and guarded by themselves
+     */
+    private static final Map<Path, Map<ClassTransformation, Set<String>>> references = new ConcurrentHashMap<>();
+    private final File cacheDirectory;
+    private final Instrumentation instrumentation;
+    private final List<ClassTransformer> transformers = new CopyOnWriteArrayList<>();
+    /**
+     * Content hash by jar, classes of jars without hash are transformed but not cached
+     */
+    private final Map<File, String> jarHashes = new ConcurrentHashMap<>();
+    private volatile String chainVersion = "";
+
+    ClassTransformation(File cacheDirectory, Instrumentation instrumentation) {
+        this.cacheDirectory = cacheDirectory;
+        this.instrumentation = instrumentation;
+    }
+
+    synchronized void add(ClassTransformer transformer) {
+        transformers.add(Objects.requireNonNull(transformer));
+        var version = new StringBuilder();
+        for (ClassTransformer t : transformers) {
+            version.append(t.getClass().getName()).append(':').append(t.getVersion()).append('\n');
+        }
+        chainVersion = version.toString();
+    }
+
+    boolean isEmpty() {
+        return transformers.isEmpty();
+    }
+
+    /**
+     * Remembers the hash of {@code jar}, so its transformed classes can be cached
+     */
+    void addJar(JarStateHolder jar) {
+        if (jar.getJarFileHash() != null) {
+            jarHashes.put(jar.getZippedJarFile(), jar.getJarFileHash());
+            var owners = referencesOfDirectory();
+            synchronized (owners) {
+                owners.computeIfAbsent(this, o -> new HashSet<>()).add(keyOf(jar.getJarFileHash()));
+            }
+        }
+    }
+
+    /**
+     * Returns the cached transformed class file, or reads the class and runs all transformers over it
+     *
+     * @param classFileHolder class to read
+     * @param jarFile         jar the class belongs to, {@code null} if unknown
+     * @param originals       reads the untransformed class file
+     * @return Transformed class file
+     * @throws IOException If the class can not be read or a transformer failed
+     */
+    byte[] read(ClassFileHolder classFileHolder, File jarFile, DefinitionPlanner.ClassFileSource originals) throws IOException {
+        var className = classFileHolder.getAbsoluteClassName();
+        var cacheFile = getCacheFile(className, jarFile);
+        if (cacheFile != null) {
+            long start = instrumentation.start();
+            try {
+                byte[] buf = Files.readAllBytes(cacheFile.toPath());
+                instrumentation.phaseCompleted(Phase.READ, className, start, buf.length);
+                return buf;
+            } catch (NoSuchFileException e) {
+                // Not transformed yet
+            }
+        }
+
+        byte[] buf = originals.read(classFileHolder);
+        long start = instrumentation.start();
+        for (ClassTransformer transformer : transformers) {
+            byte[] transformed;
+            try {
+                transformed = transformer.transform(className, buf);
+            } catch (RuntimeException e) {
+                throw new IOException(String.format("Transformer %s failed on %s", transformer.getClass().getName(), className), e);
+            }
+            if (transformed != null) buf = transformed;
+        }
+        instrumentation.phaseCompleted(Phase.TRANSFORM, className, start, buf.length);
+
+        if (cacheFile != null) writeCache(cacheFile, buf);
+        return buf;
+    }
+
+    private void writeCache(File cacheFile, byte[] buf) {
+        var tmpFile = new File(cacheFile.getParentFile(),
+                cacheFile.getName() + ".tmp-" + Long.toHexString(ThreadLocalRandom.current().nextLong()));
+        try {
+            Files.createDirectories(cacheFile.getParentFile().toPath());
+            Files.write(tmpFile.toPath(), buf);
+            Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The cache is only an optimization, the next start transforms the class again
+            logger.warn(String.format("Failed to write transformed class %s", cacheFile), e);
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * References only the transformed classes of {@code jars} and deletes every directory no transformation on the same
+     * cache directory references
+     */
+    void deleteStale(Collection<JarStateHolder> jars) {
+        Set<String> keys = new HashSet<>();
+        for (JarStateHolder jar : jars) {
+            if (jar.getJarFileHash() != null) keys.add(keyOf(jar.getJarFileHash()));
+        }
+        Set<String> referenced = new HashSet<>();
+        var owners = referencesOfDirectory();
+        File[] stale;
+        synchronized (owners) {
+            owners.put(this, keys);
+            owners.values().forEach(referenced::addAll);
+            stale = cacheDirectory.listFiles(file -> !referenced.contains(file.getName()));
+        }
+        if (stale == null) return;
+        for (File directory : stale) {
+            try {
+                FileUtils.deleteDirectory(directory);
+            } catch (IOException e) {
+                logger.warn(String.format("Could not delete stale transformed classes %s", directory), e);
+            }
+        }
+    }
+
+    /**
+     * Drops the references of this transformation, its directories get deleted by the next {@link #deleteStale(Collection)}
+     * of another loader unless that one references them
+     */
+    void release() {
+        var owners = referencesOfDirectory();
+        synchronized (owners) {
+            owners.remove(this);
+        }
+    }
+
+    private Map<ClassTransformation, Set<String>> referencesOfDirectory() {
+        var directory = cacheDirectory.toPath().toAbsolutePath().normalize();
+        try {
+            // The cache directory itself is only created by the first transformed class
+            directory = directory.getParent().toRealPath().resolve(directory.getFileName());
+        } catch (IOException e) {
+            // Base directory not created yet, every loader sees the same normalized path
+        }
+        return references.computeIfAbsent(directory, d -> new WeakHashMap<>());
+    }
+
+    /**
+     * @return Cache file of the class, {@code null} if the jar was not hashed
+     */
+    private File getCacheFile(String className, File jarFile) {
+        var hash = jarFile == null ? null : jarHashes.get(jarFile);
+        if (hash == null) return null;
+        return new File(new File(cacheDirectory, keyOf(hash)), className.replace('.', '/') + ".class");
+    }
+
+    private String keyOf(String jarFileHash) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256")
+                    .digest((jarFileHash + '\n' + chainVersion).getBytes(StandardCharsets.UTF_8));
+            var key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.substring(0, KEY_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package software.kloud.classery.loader;
+
+import java.io.IOException;
+
+/**
+ * Rewrites the class files of plugin classes before they get defined, e.g. to instrument them.
+ * See {@link ClasseryLoader#addTransformer(ClassTransformer)}.
+ * <p>
+ * Transformers are called from several threads at once and have to be thread safe
+ */
+public interface ClassTransformer {
+    /**
+     * Transformed classes are cached under this version. Change it whenever the transformer produces different output
+     *
+     * @return Version of the transformer, e.g. {@code "2"}
+     */
+    String getVersion();
+
+    /**
+     * @param className binary name of the class
+     * @param classFile class file, as read from the jar or returned by the previous transformer
+     * @return Transformed class file, {@code null} to keep it unchanged
+     * @throws IOException If the class file can not be transformed, the class can not be defined in that case
+     */
+    byte[] transform(String className, byte[] classFile) throws IOException;
+}
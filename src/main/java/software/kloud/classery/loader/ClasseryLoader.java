@@ -1,22 +1,125 @@
 package software.kloud.classery.loader;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.kloud.classery.classfile.ClassMetadata;
+import software.kloud.classery.concurrent.ClasseryExecutors;
 import software.kloud.classery.jar.*;
+import software.kloud.classery.metrics.Instrumentation;
+import software.kloud.classery.metrics.Phase;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+
+/**
+ * Loads the classes of all jars found by a {@link JarFileScanner}.
+ * <p>
+ * {@link #index()} only records where every class lives, classes get defined on first use through {@link #findClass(String)}.
+ * {@link #load()} additionally defines every indexed class right away, ordered by a {@link DefinitionPlan}.
+ * Close the loader to release its threads and the jars kept open for {@link JarFileScanner.UnpackMode#IN_PLACE}
+ * <p>
+ * The loader is registered as parallel capable. Lookups of already defined classes do not lock at all,
+ * definitions only lock on the requested class name. Subclasses have to register themselves as well.
+ * <p>
+ * With {@link Isolation#PER_JAR} every jar gets its own child loader, so single jars can be unloaded and reloaded
+ * through {@link #unload(File)} and {@link #reload(JarChangeEvent)} while the classes of all other jars stay defined.
+ * Plugin classes are then only resolved through {@link #getDelegatingLoader()}, never through this loader
+ * <p>
+ * Resources of the plugin jars are indexed together with the classes and served by {@link #findResource(String)} and
+ * {@link #findResources(String)}, their contents go through a {@link ResourceCache}
+ * <p>
+ * {@link ClassTransformer}s added through {@link #addTransformer(ClassTransformer)} rewrite every class between reading
+ * and defining it, see {@link ClassTransformation}
+ */
+public class ClasseryLoader extends ClassLoader implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ClasseryLoader.class);
+
+    static {
+        registerAsParallelCapable();
+    }
 
-public class ClasseryLoader extends ClassLoader {
     private final JarFileScanner jarFileScanner;
+    private final Instrumentation instrumentation;
+    private final ClasseryExecutors executors;
+    private final boolean ownsExecutors;
+    /**
+     * Memory mapped jars read in place keyed by path, and nested jars keyed by {@code <jar>!/<nested jar>}
+     */
+    private final Map<String, ZipArchive> openArchives = new ConcurrentHashMap<>();
+    private final Map<String, Class<?>> definedClasses = new ConcurrentHashMap<>();
+    /**
+     * Child loaders by jar for {@link Isolation#PER_JAR}, unloading removes them
+     */
+    private final Map<File, PluginClassLoader> pluginLoaders = new ConcurrentHashMap<>();
+    /**
+     * Resolves plugin classes for {@link Isolation#PER_JAR}, replaced whenever jars get unloaded
+     */
+    private volatile DelegatingClassLoader delegatingLoader = new DelegatingClassLoader(this);
+    private volatile Isolation isolation = Isolation.SHARED;
+    private volatile Map<String, ClassFileHolder> classIndex = Collections.emptyMap();
+    private volatile ClassIndex packageIndex = new ClassIndex();
+    private volatile ResourceIndex resourceIndex = new ResourceIndex();
+    private final ResourceCache resourceCache = new ResourceCache(ResourceCache.DEFAULT_MAX_BYTES);
+    /**
+     * Content hash of every indexed jar, to drop cached contents and open archives of jars that changed in between
+     */
+    private final Map<File, String> indexedJarHashes = new ConcurrentHashMap<>();
+    private final MetadataScanner metadataScanner;
+    private final ClassTransformation transformation;
 
     public ClasseryLoader(File baseDirectory, List<File> pluginDirectory) throws IOException {
+        this(baseDirectory, pluginDirectory, JarFileScanner.UnpackMode.EXTRACT);
+    }
+
+    /**
+     * @param baseDirectory   Directory holding the scan cache and, if extracting, the unpacked jars
+     * @param pluginDirectory Directories to search for jars
+     * @param unpackMode      {@link JarFileScanner.UnpackMode#IN_PLACE} reads classes straight from the jars
+     * @throws IOException If the scan cache can not be read
+     */
+    public ClasseryLoader(File baseDirectory, List<File> pluginDirectory, JarFileScanner.UnpackMode unpackMode) throws IOException {
+        this(baseDirectory, pluginDirectory, unpackMode, new ClasseryExecutors(), true);
+    }
+
+    /**
+     * Create a loader running on shared executors. Closing the loader does not close them
+     *
+     * @param baseDirectory   Directory holding the scan cache and, if extracting, the unpacked jars
+     * @param pluginDirectory Directories to search for jars
+     * @param unpackMode      {@link JarFileScanner.UnpackMode#IN_PLACE} reads classes straight from the jars
+     * @param executors       executors for scanning, traversing and defining
+     * @throws IOException If the scan cache can not be read
+     */
+    public ClasseryLoader(
+            File baseDirectory,
+            List<File> pluginDirectory,
+            JarFileScanner.UnpackMode unpackMode,
+            ClasseryExecutors executors
+    ) throws IOException {
+        this(baseDirectory, pluginDirectory, unpackMode, executors, false);
+    }
+
+    private ClasseryLoader(
+            File baseDirectory,
+            List<File> pluginDirectory,
+            JarFileScanner.UnpackMode unpackMode,
+            ClasseryExecutors executors,
+            boolean ownsExecutors
+    ) throws IOException {
         assert baseDirectory.isDirectory();
-        this.jarFileScanner = new JarFileScanner(baseDirectory);
+        this.executors = executors;
+        this.ownsExecutors = ownsExecutors;
+        this.jarFileScanner = new JarFileScanner(baseDirectory, executors);
+        this.instrumentation = jarFileScanner.getInstrumentation();
+        this.metadataScanner = new MetadataScanner(new File(baseDirectory, "metadata"), executors.getCpuPool(), this::readClassFile);
+        this.transformation = new ClassTransformation(new File(baseDirectory, "transformed"), instrumentation);
+        jarFileScanner.setUnpackMode(unpackMode);
         jarFileScanner.init();
         for (File directory : pluginDirectory) {
             assert directory.isDirectory();
@@ -24,32 +127,764 @@ public class ClasseryLoader extends ClassLoader {
         }
     }
 
-    public List<Class<?>> load() throws IOException, JarUnpackingException {
+    /**
+     * Restricts which classes get indexed and defined, see {@link JarFileScanner#setEntrySelector(EntrySelector)}.
+     * Has to be set before {@link #index()}
+     *
+     * @param entrySelector selector to use for the next scans
+     */
+    public void setEntrySelector(EntrySelector entrySelector) {
+        jarFileScanner.setEntrySelector(entrySelector);
+    }
+
+    public Isolation getIsolation() {
+        return isolation;
+    }
+
+    /**
+     * Loader to look plugin classes up with, e.g. for {@link Class#forName(String, boolean, ClassLoader)},
+     * {@link java.util.ServiceLoader} or as context class loader. With {@link Isolation#SHARED} this is the loader itself.
+     * <p>
+     * With {@link Isolation#PER_JAR} the JVM would pin every class resolved through a loader to it, so this loader
+     * does not resolve plugin classes itself. The returned loader does, and gets replaced by every {@link #unload(File)}
+     * that unloaded anything. Fetch it again after reloading, a replaced one only returns classes it resolved before
+     *
+     * @return Current loader resolving plugin classes
+     */
+    public ClassLoader getDelegatingLoader() {
+        return isolation == Isolation.PER_JAR ? delegatingLoader : this;
+    }
+
+    /**
+     * Sets whether all classes get defined by this loader or every jar gets its own child loader.
+     * Has to be set before the first class is defined
+     *
+     * @param isolation isolation to define classes with
+     * @throws IllegalStateException If classes were defined already
+     */
+    public void setIsolation(Isolation isolation) {
+        if (!definedClasses.isEmpty()) {
+            throw new IllegalStateException("Isolation can not be changed once classes are defined");
+        }
+        this.isolation = Objects.requireNonNull(isolation);
+    }
+
+    /**
+     * Adds a transformer running over every plugin class before it gets defined, after all previously added ones.
+     * Transformed classes are cached below the base directory by jar hash and the versions of all transformers.
+     * Has to be added before the first class is defined
+     *
+     * @param transformer transformer to add
+     * @throws IllegalStateException If classes were defined already
+     */
+    public void addTransformer(ClassTransformer transformer) {
+        if (!definedClasses.isEmpty()) {
+            throw new IllegalStateException("Transformers can not be added once classes are defined");
+        }
+        transformation.add(transformer);
+    }
+
+    /**
+     * @return Scanner used by this loader, to be configured before calling {@link #index()}
+     */
+    public JarFileScanner getJarFileScanner() {
+        return jarFileScanner;
+    }
+
+    /**
+     * @return Instrumentation shared with the scanner, timing reads and definitions of classes as well
+     */
+    public Instrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    /**
+     * @return Cache of resource contents, {@link ResourceCache#setMaxBytes(long)} bounds its memory
+     */
+    public ResourceCache getResourceCache() {
+        return resourceCache;
+    }
+
+    /**
+     * Scans all plugin directories and builds the binary name to location index.
+     * Does not define any class
+     *
+     * @return Binary names of all indexed classes
+     * @throws IOException           If a jar or directory can not be read
+     * @throws JarUnpackingException If a jar could not be unpacked
+     */
+    public Set<String> index() throws IOException, JarUnpackingException {
         this.jarFileScanner.scan(JarFileScanner.ScanMode.SKIP_ALREADY_SCANNED);
+        return rebuildIndex();
+    }
+
+    /**
+     * Builds the index from the jars the scanner currently knows, without scanning
+     */
+    private Set<String> rebuildIndex() throws IOException {
         Set<JarStateHolder> foundJars = jarFileScanner.getAll();
 
-        Set<ClassFileHolder> foundClassFiles = foundJars.stream()
-                .map(jar -> new PackageAwareJarDirectoryTraverser(jar.getUnzippedDirectory()))
-                .map(PackageAwareJarDirectoryTraverser::traverse)
-                .flatMap(List::stream)
-                .collect(Collectors.toSet());
+        Map<String, ClassFileHolder> index = new ConcurrentHashMap<>();
+        var packageIndex = new ClassIndex();
+        var resourceIndex = new ResourceIndex();
+        for (JarStateHolder jar : foundJars) {
+            var classFiles = findClassFiles(jar);
+            for (ClassFileHolder classFileHolder : classFiles) {
+                addToIndex(index, packageIndex, jar, classFileHolder);
+            }
+            addJar(resourceIndex, jar, classFiles);
+        }
+
+        replaceClassIndex(index, packageIndex, resourceIndex);
+        Set<File> foundJarFiles = new HashSet<>();
+        foundJars.forEach(jar -> foundJarFiles.add(jar.getZippedJarFile()));
+        for (File removed : new ArrayList<>(indexedJarHashes.keySet())) {
+            if (!foundJarFiles.contains(removed)) {
+                indexedJarHashes.remove(removed);
+                closeArchives(removed);
+                resourceCache.invalidate(removed);
+            }
+        }
+        if (!transformation.isEmpty()) {
+            executors.getIoExecutor().execute(() -> transformation.deleteStale(foundJars));
+        }
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * Streaming variant of {@link #load()}. Jars get indexed and their classes defined while later jars are still being unpacked.
+     * <p>
+     * The publisher is cold, every subscription runs its own scan and replaces the class index.
+     * Classes whose super types live in jars that did not arrive yet are held back until they do.
+     * If some still can not be defined once the scan is done, the publisher fails with an {@link UnresolvedDependencyException}.
+     * A slow subscriber slows down scanning, see {@link JarFileScanner#publish(JarFileScanner.ScanMode)}
+     *
+     * @return Publisher of every defined class
+     */
+    public Flow.Publisher<Class<?>> publishClasses() {
+        return subscriber -> {
+            var publisher = new SubmissionPublisher<Class<?>>(executors.getIoExecutor(), Flow.defaultBufferSize());
+            publisher.subscribe(subscriber);
+            jarFileScanner.publish(JarFileScanner.ScanMode.SKIP_ALREADY_SCANNED)
+                    .subscribe(new ClassPipeline(this, publisher));
+        };
+    }
 
+    /**
+     * @return Location of every class in {@code jar}, from the cached entries if possible
+     * @throws IOException If the jar has to be traversed and can not be read
+     */
+    List<ClassFileHolder> findClassFiles(JarStateHolder jar) throws IOException {
+        if (jar.getClassEntries() != null) {
+            return fromClassEntries(jar);
+        }
+        long start = instrumentation.start();
+        List<ClassFileHolder> classFiles;
+        if (jarFileScanner.getUnpackMode() == JarFileScanner.UnpackMode.IN_PLACE) {
+            classFiles = new JarArchiveTraverser(jar.getZippedJarFile(), jarFileScanner.getEntrySelector()).traverse();
+        } else {
+            var extracted = new PackageAwareJarDirectoryTraverser(
+                    jar.getUnzippedDirectory(), executors.getCpuPool(), jarFileScanner.getEntrySelector()).traverse();
+            classFiles = new ArrayList<>(extracted.size());
+            for (ClassFileHolder classFileHolder : extracted) {
+                classFiles.add(ClassFileHolder.extracted(classFileHolder.getClassFile(), classFileHolder.getAbsoluteClassName(), jar.getZippedJarFile()));
+            }
+        }
+        instrumentation.phaseCompleted(Phase.TRAVERSE, jar.getZippedJarFile().getPath(), start, 0);
+        return classFiles;
+    }
+
+    /**
+     * Indexes the resources and class files of {@code jar}, resources from the cached entries if possible, and registers
+     * it for the cache of transformed classes. If the jar changed since it was indexed last, its cached resources and
+     * open archives are dropped
+     *
+     * @param classFiles classes of the jar, see {@link #findClassFiles(JarStateHolder)}
+     * @throws IOException If the jar has to be traversed and can not be read
+     */
+    void addJar(ResourceIndex resourceIndex, JarStateHolder jar, List<ClassFileHolder> classFiles) throws IOException {
+        var jarFile = jar.getZippedJarFile();
+        // Jars without hash can not be compared, their contents are read again
+        var previousHash = jar.getJarFileHash() == null
+                ? indexedJarHashes.remove(jarFile)
+                : indexedJarHashes.put(jarFile, jar.getJarFileHash());
+        if (previousHash != null && !previousHash.equals(jar.getJarFileHash())) {
+            closeArchives(jarFile);
+            resourceCache.invalidate(jarFile);
+        }
+        var resourceEntries = jar.getResourceEntries();
+        if (resourceEntries == null) {
+            resourceEntries = new JarArchiveTraverser(jar.getZippedJarFile(), jarFileScanner.getEntrySelector()).traverseResources();
+        }
+        resourceIndex.addAll(jar, resourceEntries, jarFileScanner.getUnpackMode() == JarFileScanner.UnpackMode.IN_PLACE);
+        resourceIndex.addClasses(jar, classFiles);
+        transformation.addJar(jar);
+    }
+
+    /**
+     * Indexes the class both by name and in the package index. Conflicting locations only end up in the package index
+     *
+     * @return false if another location was already indexed under the same name
+     */
+    boolean addToIndex(Map<String, ClassFileHolder> index, ClassIndex packageIndex, JarStateHolder jar, ClassFileHolder classFileHolder) {
+        packageIndex.add(jar.getZippedJarFile(), classFileHolder);
+        var previous = index.putIfAbsent(classFileHolder.getAbsoluteClassName(), classFileHolder);
+        if (previous != null && !previous.equals(classFileHolder)) {
+            logger.warn(String.format("Class %s found in %s and %s. Using the first one",
+                    classFileHolder.getAbsoluteClassName(), previous.getClassFile(), classFileHolder.getClassFile()));
+        }
+        return previous == null;
+    }
+
+    void replaceClassIndex(Map<String, ClassFileHolder> index, ClassIndex packageIndex, ResourceIndex resourceIndex) {
+        this.classIndex = index;
+        this.packageIndex = packageIndex;
+        this.resourceIndex = resourceIndex;
+    }
+
+    /**
+     * Query view of all classes found by the last {@link #index()} or {@link #publishClasses()}, e.g. to list a package,
+     * find the jar of a class or spot classes defined by several jars
+     *
+     * @return Package index of all found classes, including conflicting duplicates
+     */
+    public ClassIndex getPackageIndex() {
+        return packageIndex;
+    }
+
+    /**
+     * Builds the class locations from the index the scanner cached for {@code jar}, without touching the jar itself
+     */
+    private List<ClassFileHolder> fromClassEntries(JarStateHolder jar) {
+        boolean inPlace = jarFileScanner.getUnpackMode() == JarFileScanner.UnpackMode.IN_PLACE;
+        List<ClassFileHolder> found = new ArrayList<>(jar.getClassEntries().size());
+        for (Map.Entry<String, String> classEntry : jar.getClassEntries().entrySet()) {
+            // Nested jars do not get extracted, their classes are always read from the jar
+            if (inPlace || classEntry.getValue().contains(ZipArchive.NESTED_SEPARATOR)) {
+                found.add(ClassFileHolder.archived(jar.getZippedJarFile(), classEntry.getValue(), classEntry.getKey()));
+            } else {
+                found.add(ClassFileHolder.extracted(new File(jar.getUnzippedDirectory(), classEntry.getValue()), classEntry.getKey(), jar.getZippedJarFile()));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Eager variant of {@link #index()}. Defines every found class in dependency order,
+     * super types first. Classes without dependencies between each other get defined in parallel
+     *
+     * @return All loaded classes, in definition order
+     * @throws IOException                   If a jar or directory can not be read
+     * @throws JarUnpackingException         If a jar could not be unpacked
+     * @throws UnresolvedDependencyException If any class has a super type that can not be found. Nothing gets defined in that case
+     */
+    public List<Class<?>> load() throws IOException, JarUnpackingException, UnresolvedDependencyException {
+        index();
+        DefinitionPlan plan = plan();
+        if (!plan.isComplete()) {
+            throw new UnresolvedDependencyException(plan.getMissingDependencies());
+        }
+        return define(plan);
+    }
+
+    /**
+     * Defines only the classes accepted by {@code filter}, e.g. all classes carrying a plugin annotation,
+     * plus the super types they need. The filter sees the {@link ClassMetadata} of every indexed class,
+     * nothing else gets defined
+     *
+     * @param filter selects the classes to define
+     * @return The accepted classes, in definition order
+     * @throws IOException                   If a jar, directory or class file can not be read
+     * @throws JarUnpackingException         If a jar could not be unpacked
+     * @throws UnresolvedDependencyException If an accepted class has a super type that can not be found. Nothing gets defined in that case
+     */
+    public List<Class<?>> load(Predicate<ClassMetadata> filter) throws IOException, JarUnpackingException, UnresolvedDependencyException {
+        index();
+        var metadata = scanMetadata();
+        var index = getClassIndex();
+
+        Set<String> accepted = new HashSet<>();
+        Deque<String> required = new ArrayDeque<>();
+        for (ClassMetadata classMetadata : metadata.values()) {
+            if (filter.test(classMetadata)) {
+                accepted.add(classMetadata.getClassName());
+                required.add(classMetadata.getClassName());
+            }
+        }
+
+        // Super types from the plugins have to be defined as well, the planner reports everything else
+        Map<String, ClassFileHolder> selected = new HashMap<>();
+        while (!required.isEmpty()) {
+            var className = required.poll();
+            var classFileHolder = index.get(className);
+            if (classFileHolder == null || selected.putIfAbsent(className, classFileHolder) != null) continue;
+            var classMetadata = metadata.get(className);
+            if (classMetadata == null) continue;
+            if (classMetadata.getSuperClassName() != null) required.add(classMetadata.getSuperClassName());
+            required.addAll(classMetadata.getInterfaceNames());
+        }
+
+        DefinitionPlan plan = planFor(selected);
+        if (!plan.isComplete()) {
+            throw new UnresolvedDependencyException(plan.getMissingDependencies());
+        }
+        List<Class<?>> loaded = new ArrayList<>(accepted.size());
+        for (Class<?> clazz : define(plan)) {
+            if (accepted.contains(clazz.getName())) loaded.add(clazz);
+        }
+        return loaded;
+    }
+
+    /**
+     * Parses the metadata of all indexed classes from their class files in parallel, without defining any of them.
+     * Results are cached per jar content below the base directory. Call {@link #index()} first
+     *
+     * @return Metadata by binary class name
+     * @throws IOException If a class file can not be read or parsed
+     */
+    public Map<String, ClassMetadata> scanMetadata() throws IOException {
+        var packageIndex = getPackageIndex();
+        Map<JarStateHolder, List<ClassFileHolder>> classFiles = new HashMap<>();
+        for (JarStateHolder jar : jarFileScanner.getAll()) {
+            classFiles.put(jar, findClassFiles(jar));
+        }
+
+        Map<String, ClassMetadata> res = new HashMap<>();
+        for (Map.Entry<JarStateHolder, List<ClassMetadata>> jar : metadataScanner.scan(classFiles).entrySet()) {
+            var jarFile = jar.getKey().getZippedJarFile();
+            for (ClassMetadata classMetadata : jar.getValue()) {
+                // Classes found in several jars are described by the jar the index uses
+                var indexedJar = packageIndex.findJar(classMetadata.getClassName());
+                if (indexedJar.isPresent() && indexedJar.get().equals(jarFile)) {
+                    res.put(classMetadata.getClassName(), classMetadata);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(res);
+    }
+
+    /**
+     * Reads the headers of all indexed classes and orders them by their super types.
+     * Call {@link #index()} first
+     *
+     * @return Plan listing the definition waves and all missing dependencies
+     * @throws IOException If a class file can not be read
+     */
+    public DefinitionPlan plan() throws IOException {
+        return planFor(getClassIndex());
+    }
+
+    /**
+     * Plans only the given classes. Super types already defined by this loader count as resolved
+     */
+    DefinitionPlan planFor(Map<String, ClassFileHolder> classes) throws IOException {
+        return planFor(classes, Collections.emptyMap());
+    }
+
+    /**
+     * @param parsed classes parsed by an earlier plan, see {@link DefinitionPlanner#plan(Map, Map)}
+     */
+    DefinitionPlan planFor(Map<String, ClassFileHolder> classes, Map<String, DefinitionPlanner.ParsedClass> parsed) throws IOException {
+        return new DefinitionPlanner(getParent(), definedClasses::containsKey, executors.getCpuPool(), this::readTransformedClassFile)
+                .plan(classes, parsed);
+    }
+
+    List<Class<?>> define(DefinitionPlan plan) throws IOException {
+        ExecutorService executor = executors.getCpuPool();
         List<Class<?>> loadedClazzes = new ArrayList<>();
-        for (ClassFileHolder foundClassFile : foundClassFiles) {
-            File classFile = foundClassFile.getClassFile();
-            String className = foundClassFile.getAbsoluteClassName();
-            int length = (int) classFile.length();
-            byte[] buf = new byte[length];
-
-            try (InputStream is = new FileInputStream(classFile)) {
-                var read = is.read(buf);
-                if (read < 1) {
-                    throw new IOException("Corrupt class file found");
+        for (List<String> wave : plan.getWaves()) {
+            List<Callable<Class<?>>> definitions = new ArrayList<>(wave.size());
+            for (String className : wave) {
+                definitions.add(() -> defineIndexedClass(className, plan.takeClassFile(className)));
+            }
+            try {
+                for (Future<Class<?>> definition : executor.invokeAll(definitions)) {
+                    loadedClazzes.add(definition.get());
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Class definition was interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw new IOException("Failed to define class", e.getCause());
             }
-            Class<?> clazz = this.defineClass(className, buf, 0, length);
-            loadedClazzes.add(clazz);
         }
         return loadedClazzes;
     }
+
+    private Class<?> defineIndexedClass(String name, byte[] buf) throws IOException {
+        if (isolation == Isolation.PER_JAR) {
+            var owner = findPluginLoader(name);
+            if (owner == null) {
+                throw new IOException(String.format("Class %s is not indexed", name));
+            }
+            return owner.defineIndexedClass(name, buf);
+        }
+
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz != null) return clazz;
+
+            if (buf == null) {
+                buf = readIndexedClassFile(name);
+            }
+            clazz = defineTimed(name, buf);
+            definedClasses.put(name, clazz);
+            return clazz;
+        }
+    }
+
+    private Map<String, ClassFileHolder> getClassIndex() {
+        return classIndex;
+    }
+
+    /**
+     * Answers already defined plugin classes from a concurrent table without taking any lock.
+     * Everything else goes through the usual parent first delegation, locked per class name
+     */
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (isolation == Isolation.SHARED) {
+            Class<?> clazz = definedClasses.get(name);
+            if (clazz != null) return clazz;
+        }
+
+        return super.loadClass(name, resolve);
+    }
+
+    /**
+     * With {@link Isolation#PER_JAR} plugin classes are not found here but through {@link #getDelegatingLoader()}
+     */
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        if (isolation == Isolation.PER_JAR) {
+            throw new ClassNotFoundException(String.format(
+                    "%s, plugin classes of Isolation.PER_JAR are loaded through getDelegatingLoader()", name));
+        }
+
+        ClassFileHolder classFileHolder = getClassIndex().get(name);
+        if (classFileHolder == null) {
+            throw new ClassNotFoundException(name);
+        }
+
+        byte[] buf;
+        try {
+            buf = readTransformedClassFile(classFileHolder);
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+        Class<?> clazz = defineTimed(name, buf);
+        definedClasses.put(name, clazz);
+        return clazz;
+    }
+
+    /**
+     * Looks {@code name} up in the resource index, the parent is asked first by {@link #getResource(String)}
+     *
+     * @return {@code classery:} URL of the first plugin jar containing the resource, {@code null} if none does
+     */
+    @Override
+    protected URL findResource(String name) {
+        var location = resourceIndex.find(name);
+        return location == null ? null : location.toUrl(this);
+    }
+
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        return findResources(name, null);
+    }
+
+    /**
+     * @param preferredJar jar whose resource is listed first, {@code null} to keep index order
+     * @return URLs of {@code name} in every plugin jar containing it
+     */
+    Enumeration<URL> findResources(String name, File preferredJar) {
+        var locations = resourceIndex.findAll(name);
+        List<URL> urls = new ArrayList<>(locations.size());
+        for (ResourceLocation location : locations) {
+            if (location.getJarFile().equals(preferredJar)) {
+                urls.add(0, location.toUrl(this));
+            } else {
+                urls.add(location.toUrl(this));
+            }
+        }
+        return Collections.enumeration(urls);
+    }
+
+    /**
+     * @return URL of {@code name} in {@code jarFile}, {@code null} if the jar does not contain it
+     */
+    URL findResource(String name, File jarFile) {
+        var location = resourceIndex.find(name, jarFile);
+        return location == null ? null : location.toUrl(this);
+    }
+
+    /**
+     * Reads a resource through the {@link ResourceCache}
+     */
+    byte[] readResource(ResourceLocation location) throws IOException {
+        return resourceCache.get(location, this::readResourceUncached);
+    }
+
+    private byte[] readResourceUncached(ResourceLocation location) throws IOException {
+        long start = instrumentation.start();
+        byte[] buf = location.isArchived()
+                ? readArchivedEntry(location.getJarFile(), location.getEntryName())
+                : Files.readAllBytes(location.getExtractedFile().toPath());
+        instrumentation.phaseCompleted(Phase.READ, location.toString(), start, buf.length);
+        return buf;
+    }
+
+    /**
+     * Resolved from the name index alone, so lookups do not lock
+     *
+     * @return Child loader of the jar the index locates {@code name} in, created on first use. {@code null} if not indexed
+     */
+    PluginClassLoader findPluginLoader(String name) {
+        var classFileHolder = getClassIndex().get(name);
+        if (classFileHolder == null || classFileHolder.getJarFile() == null) return null;
+        return pluginLoaders.computeIfAbsent(classFileHolder.getJarFile(), jar -> new PluginClassLoader(this, jar));
+    }
+
+    /**
+     * Makes a class defined by a child loader visible to lookups through this loader
+     */
+    void classDefined(PluginClassLoader pluginLoader, String name, Class<?> clazz) {
+        definedClasses.put(name, clazz);
+        // Lost the race against unload(), which might have missed the class
+        if (pluginLoader.isUnloaded()) definedClasses.remove(name, clazz);
+    }
+
+    /**
+     * Drops the child loader of {@code jarFile} and, transitively, of every jar that resolved classes from it.
+     * If anything got unloaded, {@link #getDelegatingLoader()} returns a new loader, whose lookups define the dropped
+     * classes again from the current index, in new child loaders. The previous delegating loader keeps returning the
+     * classes it resolved before. Metaspace of the old classes is reclaimed once nothing references them anymore,
+     * previous delegating loaders, instances, class objects and threads started by plugin code included.
+     * Requires {@link Isolation#PER_JAR}
+     *
+     * @param jarFile jar to unload
+     * @return Jars that got unloaded, empty if none of the jar's classes was defined
+     */
+    public Set<File> unload(File jarFile) {
+        requirePerJarIsolation();
+        Set<File> unloaded = new HashSet<>();
+        Deque<PluginClassLoader> pending = new ArrayDeque<>();
+        var loader = pluginLoaders.get(jarFile.getAbsoluteFile());
+        if (loader != null) pending.add(loader);
+
+        while (!pending.isEmpty()) {
+            var next = pending.poll();
+            if (!pluginLoaders.remove(next.getJarFile(), next)) continue;
+            next.markUnloaded();
+            definedClasses.values().removeIf(clazz -> clazz.getClassLoader() == next);
+            unloaded.add(next.getJarFile());
+            pending.addAll(next.getDependents());
+        }
+        if (!unloaded.isEmpty()) {
+            synchronized (pluginLoaders) {
+                var retired = delegatingLoader;
+                delegatingLoader = new DelegatingClassLoader(this);
+                retired.retire();
+            }
+            logger.info(String.format("Unloaded %d jars: %s", unloaded.size(), unloaded));
+        }
+        return unloaded;
+    }
+
+    /**
+     * Applies a rescan of the scanner: unloads modified and removed jars, see {@link #unload(File)}, and rebuilds the
+     * index so their classes get defined from the new jars on next use. Unchanged jars keep their classes.
+     * To hot deploy plugins, register {@link #asReloadListener()} with a {@link JarDirectoryWatcher} of
+     * {@link #getJarFileScanner()}. Requires {@link Isolation#PER_JAR}
+     *
+     * @param event changes reported by the scanner
+     * @return Jars that got unloaded
+     * @throws IOException If a changed jar can not be read
+     */
+    public Set<File> reload(JarChangeEvent event) throws IOException {
+        requirePerJarIsolation();
+        Set<File> unloaded = new HashSet<>();
+        List<JarStateHolder> changedJars = new ArrayList<>(event.getModified());
+        changedJars.addAll(event.getRemoved());
+        for (JarStateHolder jar : changedJars) {
+            unloaded.addAll(unload(jar.getZippedJarFile()));
+            closeArchives(jar.getZippedJarFile());
+            resourceCache.invalidate(jar.getZippedJarFile());
+        }
+        rebuildIndex();
+        return unloaded;
+    }
+
+    /**
+     * Listener calling {@link #reload(JarChangeEvent)} for every change, for
+     * {@link JarDirectoryWatcher#addListener(JarChangeListener)}. Failed reloads get logged, the jars are reloaded again
+     * on their next change. Requires {@link Isolation#PER_JAR}
+     *
+     * @return Listener reloading changed jars
+     */
+    public JarChangeListener asReloadListener() {
+        requirePerJarIsolation();
+        return event -> {
+            try {
+                reload(event);
+            } catch (IOException e) {
+                logger.error(String.format("Failed to reload changed jars of %s", event.getPluginDirectory()), e);
+            }
+        };
+    }
+
+    /**
+     * Rescans a plugin directory and applies the changes, see {@link #reload(JarChangeEvent)}
+     *
+     * @param pluginDirectory directory to rescan
+     * @return Jars that got unloaded
+     * @throws IOException           If a jar or the cache can not be read
+     * @throws JarUnpackingException If a jar could not be unpacked
+     */
+    public Set<File> reloadDirectory(File pluginDirectory) throws IOException, JarUnpackingException {
+        requirePerJarIsolation();
+        return reload(jarFileScanner.rescanDirectory(pluginDirectory));
+    }
+
+    private void requirePerJarIsolation() {
+        if (isolation != Isolation.PER_JAR) {
+            throw new IllegalStateException("Unloading jars requires Isolation.PER_JAR");
+        }
+    }
+
+    /**
+     * Closes the archives of {@code jarFile} and of its nested jars, the next read maps the current file
+     */
+    private void closeArchives(File jarFile) {
+        var prefix = jarFile.getPath() + ZipArchive.NESTED_SEPARATOR;
+        openArchives.entrySet().removeIf(archive -> {
+            if (!archive.getKey().equals(jarFile.getPath()) && !archive.getKey().startsWith(prefix)) return false;
+            archive.getValue().close();
+            return true;
+        });
+    }
+
+    private Class<?> defineTimed(String name, byte[] buf) {
+        long start = instrumentation.start();
+        Class<?> clazz = this.defineClass(name, buf, 0, buf.length);
+        instrumentation.phaseCompleted(Phase.DEFINE, name, start, buf.length);
+        return clazz;
+    }
+
+    /**
+     * Reads the class file the index locates {@code name} in, transformed
+     */
+    byte[] readIndexedClassFile(String name) throws IOException {
+        var classFileHolder = getClassIndex().get(name);
+        if (classFileHolder == null) {
+            throw new IOException(String.format("Class %s is not indexed", name));
+        }
+        return readTransformedClassFile(classFileHolder);
+    }
+
+    /**
+     * Reads a class file as it gets defined, with all transformers applied
+     */
+    private byte[] readTransformedClassFile(ClassFileHolder classFileHolder) throws IOException {
+        if (transformation.isEmpty()) return readClassFile(classFileHolder);
+        return transformation.read(classFileHolder, classFileHolder.getJarFile(), this::readClassFile);
+    }
+
+    private byte[] readClassFile(ClassFileHolder classFileHolder) throws IOException {
+        long start = instrumentation.start();
+        byte[] buf = classFileHolder.isArchived()
+                ? readArchivedClassFile(classFileHolder)
+                : readExtractedClassFile(classFileHolder);
+        instrumentation.phaseCompleted(Phase.READ, classFileHolder.getAbsoluteClassName(), start, buf.length);
+        return buf;
+    }
+
+    private byte[] readExtractedClassFile(ClassFileHolder classFileHolder) throws IOException {
+        byte[] buf = Files.readAllBytes(classFileHolder.getClassFile().toPath());
+        if (buf.length < 1) {
+            throw new IOException("Corrupt class file found");
+        }
+        return buf;
+    }
+
+    private byte[] readArchivedClassFile(ClassFileHolder classFileHolder) throws IOException {
+        byte[] buf = readArchivedEntry(classFileHolder.getClassFile(), classFileHolder.getEntryName());
+        if (buf.length < 1) {
+            throw new IOException("Corrupt class file found");
+        }
+        return buf;
+    }
+
+    /**
+     * Reads an entry of a jar, {@code <nested jar>!/<entry>} reads from a nested jar
+     */
+    private byte[] readArchivedEntry(File jarFile, String entryName) throws IOException {
+        int nestedEntryStart = entryName.lastIndexOf(ZipArchive.NESTED_SEPARATOR);
+        var jar = nestedEntryStart < 0
+                ? openArchive(jarFile)
+                : openNestedArchive(jarFile, entryName.substring(0, nestedEntryStart));
+        var innerEntryName = nestedEntryStart < 0 ? entryName : entryName.substring(nestedEntryStart + ZipArchive.NESTED_SEPARATOR.length());
+
+        int index = jar.indexOf(innerEntryName);
+        if (index < 0) {
+            throw new IOException(String.format("Entry %s vanished from %s", entryName, jarFile));
+        }
+        return jar.readBytes(index);
+    }
+
+    /**
+     * Maps a jar, keeping it open for further classes
+     */
+    private ZipArchive openArchive(File jarFile) throws IOException {
+        var archive = openArchives.get(jarFile.getPath());
+        if (archive != null) return archive;
+        var opened = ZipArchive.open(jarFile);
+        archive = openArchives.putIfAbsent(jarFile.getPath(), opened);
+        return archive == null ? opened : archive;
+    }
+
+    /**
+     * Opens a nested jar in memory, keeping it and its outer jar open for further classes
+     */
+    private ZipArchive openNestedArchive(File jarFile, String nestedJarName) throws IOException {
+        var key = jarFile.getPath() + ZipArchive.NESTED_SEPARATOR + nestedJarName;
+        var nested = openArchives.get(key);
+        if (nested != null) return nested;
+
+        var opened = openArchive(jarFile).openNested(nestedJarName);
+        nested = openArchives.putIfAbsent(key, opened);
+        return nested == null ? opened : nested;
+    }
+
+    /**
+     * Closes all jars opened for lazy loading and the executors, unless they were passed in.
+     * Already defined classes stay usable
+     */
+    @Override
+    public void close() throws IOException {
+        if (ownsExecutors) {
+            executors.close();
+        }
+        openArchives.values().forEach(ZipArchive::close);
+        openArchives.clear();
+        resourceCache.clear();
+        transformation.release();
+        metadataScanner.release();
+    }
+
+    public enum Isolation {
+        /**
+         * Every class is defined by the {@link ClasseryLoader} itself. Classes can not be unloaded one jar at a time,
+         * but package private access works across jars sharing a package
+         */
+        SHARED,
+        /**
+         * Every jar gets its own child loader delegating to the others through the shared index, single jars can be
+         * unloaded and reloaded. Packages split across jars end up in different runtime packages
+         */
+        PER_JAR;
+    }
 }
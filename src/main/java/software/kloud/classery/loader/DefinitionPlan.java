@@ -0,0 +1,74 @@
+package software.kloud.classery.loader;
+
+import software.kloud.classery.classfile.ClassFileHeader;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Order in which indexed classes get defined. Every class only depends on classes of earlier waves,
+ * so all classes of a single wave can be defined in parallel
+ */
+@SuppressWarnings("WeakerAccess")
+public class DefinitionPlan {
+    private final List<List<String>> waves;
+    private final List<MissingDependency> missingDependencies;
+    private final Map<String, byte[]> classFiles;
+    private final Map<String, ClassFileHeader> headers;
+
+    DefinitionPlan(
+            List<List<String>> waves,
+            List<MissingDependency> missingDependencies,
+            Map<String, byte[]> classFiles,
+            Map<String, ClassFileHeader> headers
+    ) {
+        this.waves = waves;
+        this.missingDependencies = missingDependencies;
+        this.classFiles = classFiles;
+        this.headers = headers;
+    }
+
+    /**
+     * @return Binary class names grouped into waves, sorted by name inside each wave
+     */
+    public List<List<String>> getWaves() {
+        return Collections.unmodifiableList(waves);
+    }
+
+    /**
+     * @return All classes left out of the waves and the dependency that blocks them
+     */
+    public List<MissingDependency> getMissingDependencies() {
+        return Collections.unmodifiableList(missingDependencies);
+    }
+
+    public boolean isComplete() {
+        return missingDependencies.isEmpty();
+    }
+
+    /**
+     * Hands out the bytes read while planning. Each class file can only be taken once
+     *
+     * @param className binary name of the class
+     * @return raw class file or {@code null} if already taken
+     */
+    byte[] takeClassFile(String className) {
+        synchronized (classFiles) {
+            return classFiles.remove(className);
+        }
+    }
+
+    /**
+     * @param className binary name of a class left out of the waves
+     * @return Bytes and header read while planning, to plan the class again later without reading it.
+     * {@code null} if the class was not parsed or its bytes were taken
+     */
+    DefinitionPlanner.ParsedClass getParsedClass(String className) {
+        synchronized (classFiles) {
+            var classFile = classFiles.get(className);
+            var header = headers.get(className);
+            return classFile == null || header == null ? null : new DefinitionPlanner.ParsedClass(classFile, header);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package software.kloud.classery.loader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.kloud.classery.classfile.ClassFileHeader;
+import software.kloud.classery.jar.ClassFileHolder;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+
+/**
+ * Builds a {@link DefinitionPlan} from the class index by reading the header of every class file.
+ * Headers get parsed in parallel on the given executor
+ */
+class DefinitionPlanner {
+    private static final Logger logger = LoggerFactory.getLogger(DefinitionPlanner.class);
+    private final ClassLoader parent;
+    private final Predicate<String> isAlreadyDefined;
+    private final ExecutorService executor;
+    private final ClassFileSource classFileSource;
+    private final Map<String, Boolean> visibleInParent = new ConcurrentHashMap<>();
+
+    /**
+     * @param parent           loader to look up super types which are not part of the planned classes
+     * @param isAlreadyDefined super types for which this is true count as resolved as well
+     * @param executor         executor to read and parse class files on
+     * @param classFileSource  reads the bytes of a class
+     */
+    DefinitionPlanner(
+            ClassLoader parent,
+            Predicate<String> isAlreadyDefined,
+            ExecutorService executor,
+            ClassFileSource classFileSource
+    ) {
+        this.parent = parent;
+        this.isAlreadyDefined = isAlreadyDefined;
+        this.executor = executor;
+        this.classFileSource = classFileSource;
+    }
+
+    DefinitionPlan plan(Map<String, ClassFileHolder> classIndex) throws IOException {
+        return plan(classIndex, Collections.emptyMap());
+    }
+
+    /**
+     * @param classIndex classes to plan
+     * @param parsed     classes of {@code classIndex} parsed by an earlier plan, they are neither read nor parsed again
+     */
+    DefinitionPlan plan(Map<String, ClassFileHolder> classIndex, Map<String, ParsedClass> parsed) throws IOException {
+        Map<String, ClassFileHeader> headers = new HashMap<>();
+        Map<String, byte[]> classFiles = new HashMap<>();
+        for (Map.Entry<String, ParsedClass> parsedClass : parsed.entrySet()) {
+            headers.put(parsedClass.getKey(), parsedClass.getValue().getHeader());
+            classFiles.put(parsedClass.getKey(), parsedClass.getValue().getClassFile());
+        }
+        readHeaders(classIndex, headers, classFiles);
+
+        List<MissingDependency> missingDependencies = new ArrayList<>();
+        Map<String, List<String>> dependents = new HashMap<>();
+        Map<String, Integer> inDegree = new HashMap<>();
+        Deque<String> blocked = new ArrayDeque<>();
+
+        for (ClassFileHeader header : headers.values()) {
+            String className = header.getClassName();
+            inDegree.putIfAbsent(className, 0);
+            boolean isBlocked = false;
+            for (String dependency : getSuperTypes(header)) {
+                if (headers.containsKey(dependency)) {
+                    dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(className);
+                    inDegree.merge(className, 1, Integer::sum);
+                } else if (!isAlreadyDefined.test(dependency) && !isVisibleInParent(dependency)) {
+                    missingDependencies.add(new MissingDependency(className, dependency));
+                    isBlocked = true;
+                }
+            }
+            if (isBlocked) blocked.add(className);
+        }
+
+        // Everything extending a blocked class is blocked as well
+        Set<String> blockedClasses = new HashSet<>(blocked);
+        while (!blocked.isEmpty()) {
+            String blockedClass = blocked.poll();
+            for (String dependent : dependents.getOrDefault(blockedClass, Collections.emptyList())) {
+                missingDependencies.add(new MissingDependency(dependent, blockedClass));
+                if (blockedClasses.add(dependent)) {
+                    blocked.add(dependent);
+                }
+            }
+        }
+
+        List<List<String>> waves = new ArrayList<>();
+        List<String> wave = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : inDegree.entrySet()) {
+            if (entry.getValue() == 0 && !blockedClasses.contains(entry.getKey())) {
+                wave.add(entry.getKey());
+            }
+        }
+        Set<String> planned = new HashSet<>();
+        while (!wave.isEmpty()) {
+            Collections.sort(wave);
+            waves.add(wave);
+            planned.addAll(wave);
+            List<String> nextWave = new ArrayList<>();
+            for (String className : wave) {
+                for (String dependent : dependents.getOrDefault(className, Collections.emptyList())) {
+                    if (inDegree.merge(dependent, -1, Integer::sum) == 0 && !blockedClasses.contains(dependent)) {
+                        nextWave.add(dependent);
+                    }
+                }
+            }
+            wave = nextWave;
+        }
+
+        // Only cyclic hierarchies remain, those can never be defined
+        for (ClassFileHeader header : headers.values()) {
+            if (planned.contains(header.getClassName()) || blockedClasses.contains(header.getClassName())) continue;
+            for (String dependency : getSuperTypes(header)) {
+                if (headers.containsKey(dependency) && !planned.contains(dependency)) {
+                    missingDependencies.add(new MissingDependency(header.getClassName(), dependency));
+                }
+            }
+        }
+
+        missingDependencies.sort(Comparator.comparing(MissingDependency::getClassName)
+                .thenComparing(MissingDependency::getDependencyName));
+        return new DefinitionPlan(waves, missingDependencies, classFiles, headers);
+    }
+
+    private void readHeaders(
+            Map<String, ClassFileHolder> classIndex,
+            Map<String, ClassFileHeader> headers,
+            Map<String, byte[]> classFiles
+    ) throws IOException {
+        CompletionService<Map.Entry<ClassFileHolder, ParsedClass>> completionService = new ExecutorCompletionService<>(executor);
+        int futuresSpawned = 0;
+        for (ClassFileHolder classFileHolder : classIndex.values()) {
+            if (headers.containsKey(classFileHolder.getAbsoluteClassName())) continue;
+            completionService.submit(() -> {
+                byte[] classFile = classFileSource.read(classFileHolder);
+                return Map.entry(classFileHolder, new ParsedClass(classFile, ClassFileHeader.read(classFile)));
+            });
+            futuresSpawned++;
+        }
+
+        try {
+            for (int i = 0; i < futuresSpawned; i++) {
+                var read = completionService.take().get();
+                var header = read.getValue().getHeader();
+                if (header.isModuleDescriptor()) continue;
+                if (!header.getClassName().equals(read.getKey().getAbsoluteClassName())) {
+                    logger.warn(String.format("Skipping class %s, its location does not match its package", header.getClassName()));
+                    continue;
+                }
+                headers.put(header.getClassName(), header);
+                classFiles.put(header.getClassName(), read.getValue().getClassFile());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Reading class file headers was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to read class file header", e.getCause());
+        }
+    }
+
+    private List<String> getSuperTypes(ClassFileHeader header) {
+        List<String> superTypes = new ArrayList<>(header.getInterfaceNames().size() + 1);
+        if (header.getSuperClassName() != null) {
+            superTypes.add(header.getSuperClassName());
+        }
+        superTypes.addAll(header.getInterfaceNames());
+        return superTypes;
+    }
+
+    private boolean isVisibleInParent(String className) {
+        return visibleInParent.computeIfAbsent(className, name -> {
+            try {
+                Class.forName(name, false, parent);
+                return true;
+            } catch (ClassNotFoundException | LinkageError e) {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Class file together with its parsed header
+     */
+    static final class ParsedClass {
+        private final byte[] classFile;
+        private final ClassFileHeader header;
+
+        ParsedClass(byte[] classFile, ClassFileHeader header) {
+            this.classFile = classFile;
+            this.header = header;
+        }
+
+        byte[] getClassFile() {
+            return classFile;
+        }
+
+        ClassFileHeader getHeader() {
+            return header;
+        }
+    }
+
+    @FunctionalInterface
+    interface ClassFileSource {
+        byte[] read(ClassFileHolder classFileHolder) throws IOException;
+    }
+}
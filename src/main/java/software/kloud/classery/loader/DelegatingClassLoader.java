@@ -0,0 +1,58 @@
+package software.kloud.classery.loader;
+
+import java.net.URL;
+import java.util.Enumeration;
+
+/**
+ * Loader to hand to plugin code and APIs such as {@link Class#forName(String, boolean, ClassLoader)} or
+ * {@link java.util.ServiceLoader} for {@link ClasseryLoader.Isolation#PER_JAR}.
+ * <p>
+ * The JVM remembers every class it resolved through a loader for the lifetime of that loader, which would keep
+ * unloaded classes alive and answer lookups with them. So plugin classes are never resolved through the
+ * {@link ClasseryLoader} itself but through this loader, which gets retired and replaced whenever jars are unloaded.
+ * A retired loader keeps answering the classes it already resolved, but does not resolve any new ones
+ */
+final class DelegatingClassLoader extends ClassLoader {
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final ClasseryLoader classeryLoader;
+    private volatile boolean retired = false;
+
+    DelegatingClassLoader(ClasseryLoader classeryLoader) {
+        super("classery-delegating", classeryLoader.getParent());
+        this.classeryLoader = classeryLoader;
+    }
+
+    void retire() {
+        retired = true;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        if (retired) {
+            throw new ClassNotFoundException(String.format("%s, this loader was retired by unloading jars", name));
+        }
+        var owner = classeryLoader.findPluginLoader(name);
+        if (owner == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return owner.loadClass(name);
+    }
+
+    @Override
+    protected URL findResource(String name) {
+        return classeryLoader.findResource(name);
+    }
+
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        return classeryLoader.findResources(name, null);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%s]", getName(), retired ? "retired" : "current");
+    }
+}
@@ -0,0 +1,196 @@
+package software.kloud.classery.loader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.kloud.classery.classfile.ClassMetadata;
+import software.kloud.classery.jar.ClassFileHolder;
+import software.kloud.classery.jar.JarStateHolder;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Parses {@link ClassMetadata} of every class of a set of jars in parallel.
+ * <p>
+ * Results get cached per jar in {@code <cache directory>/<jar hash>.meta}, a jar whose content and entry selector did not
+ * change is never read again. Several loaders may share a cache directory, each one references the files of its own jars.
+ * After each scan, cache files no scanner of this JVM references get deleted
+ */
+class MetadataScanner {
+    private static final Logger logger = LoggerFactory.getLogger(MetadataScanner.class);
+    private static final int MAGIC = 0x434C4D44; // "CLMD"
+    private static final int VERSION = 1;
+    private static final String FILE_SUFFIX = ".meta";
+    /**
+     * Cache file names referenced by every scanner, by real cache directory. Inner maps are weak and guarded by themselves
+     */
+    private static final Map<Path, Map<MetadataScanner, Set<String>>> references = new ConcurrentHashMap<>();
+    private final File cacheDirectory;
+    private final ExecutorService executor;
+    private final DefinitionPlanner.ClassFileSource classFileSource;
+
+    MetadataScanner(File cacheDirectory, ExecutorService executor, DefinitionPlanner.ClassFileSource classFileSource) {
+        this.cacheDirectory = cacheDirectory;
+        this.executor = executor;
+        this.classFileSource = classFileSource;
+    }
+
+    /**
+     * @param classFiles class files of every jar
+     * @return Metadata of all classes by jar
+     * @throws IOException If a class file can not be read or parsed
+     */
+    Map<JarStateHolder, List<ClassMetadata>> scan(Map<JarStateHolder, List<ClassFileHolder>> classFiles) throws IOException {
+        Map<JarStateHolder, List<ClassMetadata>> res = new HashMap<>();
+        Set<JarStateHolder> parsedJars = new HashSet<>();
+        CompletionService<Map.Entry<JarStateHolder, ClassMetadata>> completionService = new ExecutorCompletionService<>(executor);
+        int futuresSpawned = 0;
+        for (Map.Entry<JarStateHolder, List<ClassFileHolder>> jar : classFiles.entrySet()) {
+            var cached = readCache(jar.getKey());
+            if (cached != null) {
+                res.put(jar.getKey(), cached);
+                continue;
+            }
+
+            res.put(jar.getKey(), new ArrayList<>(jar.getValue().size()));
+            parsedJars.add(jar.getKey());
+            for (ClassFileHolder classFileHolder : jar.getValue()) {
+                completionService.submit(() -> {
+                    var metadata = ClassMetadata.read(classFileSource.read(classFileHolder));
+                    boolean isValid = !metadata.isModuleDescriptor()
+                            && metadata.getClassName().equals(classFileHolder.getAbsoluteClassName());
+                    return isValid ? Map.entry(jar.getKey(), metadata) : null;
+                });
+                futuresSpawned++;
+            }
+        }
+
+        try {
+            for (int i = 0; i < futuresSpawned; i++) {
+                var parsed = completionService.take().get();
+                if (parsed != null) res.get(parsed.getKey()).add(parsed.getValue());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Reading class metadata was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to read class metadata", e.getCause());
+        }
+
+        Set<String> cacheFileNames = new HashSet<>();
+        for (Map.Entry<JarStateHolder, List<ClassMetadata>> jar : res.entrySet()) {
+            var cacheFile = getCacheFile(jar.getKey());
+            if (cacheFile == null) continue;
+            cacheFileNames.add(cacheFile.getName());
+            if (parsedJars.contains(jar.getKey())) {
+                writeCache(jar.getKey(), jar.getValue(), cacheFile);
+            }
+        }
+        deleteStaleCacheFiles(cacheFileNames);
+        return res;
+    }
+
+    /**
+     * @return Cached metadata, {@code null} if there is no valid cache file for the current content and selector
+     */
+    private List<ClassMetadata> readCache(JarStateHolder jar) {
+        var cacheFile = getCacheFile(jar);
+        if (cacheFile == null || !cacheFile.isFile()) return null;
+
+        try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            if (!in.readUTF().equals(String.valueOf(jar.getEntrySelectorKey()))) return null;
+            int count = in.readInt();
+            List<ClassMetadata> metadata = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                metadata.add(ClassMetadata.readFrom(in));
+            }
+            return metadata;
+        } catch (IOException e) {
+            logger.warn(String.format("Ignoring unreadable metadata cache %s", cacheFile), e);
+            return null;
+        }
+    }
+
+    private void writeCache(JarStateHolder jar, List<ClassMetadata> metadata, File cacheFile) {
+        var tmpFile = new File(cacheDirectory,
+                cacheFile.getName() + ".tmp-" + Long.toHexString(ThreadLocalRandom.current().nextLong()));
+        try {
+            Files.createDirectories(cacheDirectory.toPath());
+            try (var out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(String.valueOf(jar.getEntrySelectorKey()));
+                out.writeInt(metadata.size());
+                for (ClassMetadata classMetadata : metadata) {
+                    classMetadata.writeTo(out);
+                }
+            }
+            Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The cache is only an optimization, the next scan parses the jar again
+            logger.warn(String.format("Failed to write metadata cache %s", cacheFile), e);
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * References only {@code cacheFileNames} and deletes every cache file no scanner on the same directory references
+     */
+    private void deleteStaleCacheFiles(Set<String> cacheFileNames) {
+        Set<String> referenced = new HashSet<>();
+        var owners = referencesOfDirectory();
+        File[] files;
+        synchronized (owners) {
+            owners.put(this, cacheFileNames);
+            owners.values().forEach(referenced::addAll);
+            files = cacheDirectory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX) && !referenced.contains(name));
+        }
+        if (files == null) return;
+        for (File file : files) {
+            if (!file.delete()) {
+                logger.warn(String.format("Could not delete stale metadata cache %s", file));
+            }
+        }
+    }
+
+    /**
+     * Drops the references of this scanner, its cache files get deleted by the next scan of another loader unless that
+     * one references them
+     */
+    void release() {
+        var owners = referencesOfDirectory();
+        synchronized (owners) {
+            owners.remove(this);
+        }
+    }
+
+    private Map<MetadataScanner, Set<String>> referencesOfDirectory() {
+        var directory = cacheDirectory.toPath().toAbsolutePath().normalize();
+        try {
+            // The cache directory itself is only created by the first cache file
+            directory = directory.getParent().toRealPath().resolve(directory.getFileName());
+        } catch (IOException e) {
+            // Base directory not created yet, every loader sees the same normalized path
+        }
+        return references.computeIfAbsent(directory, d -> new WeakHashMap<>());
+    }
+
+    /**
+     * @return Cache file named after the jar hash, {@code null} if the jar was not hashed
+     */
+    private File getCacheFile(JarStateHolder jar) {
+        var hash = jar.getJarFileHash();
+        if (hash == null) return null;
+        var name = new StringBuilder(hash.length() + FILE_SUFFIX.length());
+        for (int i = 0; i < hash.length(); i++) {
+            char c = hash.charAt(i);
+            name.append(Character.isLetterOrDigit(c) || c == '-' || c == '_' ? c : '-');
+        }
+        return new File(cacheDirectory, name.append(FILE_SUFFIX).toString());
+    }
+}
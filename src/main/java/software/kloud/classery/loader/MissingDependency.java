@@ -0,0 +1,52 @@
+package software.kloud.classery.loader;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A class that can not be defined because one of its super types is neither indexed nor visible to the parent loader
+ */
+@SuppressWarnings("WeakerAccess")
+public class MissingDependency implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * Binary name of the class that can not be defined
+     */
+    private final String className;
+    /**
+     * Binary name of the super class or interface that is missing or itself not definable
+     */
+    private final String dependencyName;
+
+    public MissingDependency(String className, String dependencyName) {
+        this.className = className;
+        this.dependencyName = dependencyName;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getDependencyName() {
+        return dependencyName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MissingDependency that = (MissingDependency) o;
+        return Objects.equals(className, that.className) &&
+                Objects.equals(dependencyName, that.dependencyName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(className, dependencyName);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s requires %s", className, dependencyName);
+    }
+}
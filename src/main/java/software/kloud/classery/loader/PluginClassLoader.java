@@ -0,0 +1,122 @@
+package software.kloud.classery.loader;
+
+import software.kloud.classery.metrics.Phase;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Defines the classes of a single jar for {@link ClasseryLoader.Isolation#PER_JAR}.
+ * <p>
+ * Delegates to the parent of the {@link ClasseryLoader} first. Classes of other jars are looked up in the index of the
+ * {@link ClasseryLoader} and loaded by the plugin loader of their jar, which remembers this loader as a dependent.
+ * Once unloaded the loader does not define anything anymore, its classes get collected together with the loader
+ * as soon as nothing references them
+ */
+final class PluginClassLoader extends ClassLoader {
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final ClasseryLoader classeryLoader;
+    private final File jarFile;
+    /**
+     * Plugin loaders which resolved classes of this one, they have to be unloaded together with it
+     */
+    private final Set<PluginClassLoader> dependents = ConcurrentHashMap.newKeySet();
+    private volatile boolean unloaded = false;
+
+    PluginClassLoader(ClasseryLoader classeryLoader, File jarFile) {
+        super(String.format("classery-plugin-%s", jarFile.getName()), classeryLoader.getParent());
+        this.classeryLoader = classeryLoader;
+        this.jarFile = jarFile;
+    }
+
+    File getJarFile() {
+        return jarFile;
+    }
+
+    Set<PluginClassLoader> getDependents() {
+        return dependents;
+    }
+
+    boolean isUnloaded() {
+        return unloaded;
+    }
+
+    void markUnloaded() {
+        unloaded = true;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        if (unloaded) {
+            throw new ClassNotFoundException(String.format("%s, %s was unloaded", name, jarFile));
+        }
+        var owner = classeryLoader.findPluginLoader(name);
+        if (owner == null) {
+            throw new ClassNotFoundException(name);
+        }
+        if (owner != this) {
+            owner.dependents.add(this);
+            return owner.loadClass(name);
+        }
+
+        try {
+            return defineIndexedClass(name, null);
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+    /**
+     * Prefers the resource of this jar, otherwise returns the one the shared index finds first
+     */
+    @Override
+    protected URL findResource(String name) {
+        var own = classeryLoader.findResource(name, jarFile);
+        return own != null ? own : classeryLoader.findResource(name);
+    }
+
+    /**
+     * Lists the resource of this jar first, followed by the ones of all other jars
+     */
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        return classeryLoader.findResources(name, jarFile);
+    }
+
+    /**
+     * Defines a class of this jar unless it is defined already
+     *
+     * @param buf class file, {@code null} to read it through the index
+     */
+    Class<?> defineIndexedClass(String name, byte[] buf) throws IOException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz != null) return clazz;
+            if (unloaded) {
+                throw new IOException(String.format("Can not define %s, %s was unloaded", name, jarFile));
+            }
+
+            if (buf == null) {
+                buf = classeryLoader.readIndexedClassFile(name);
+            }
+            var instrumentation = classeryLoader.getInstrumentation();
+            long start = instrumentation.start();
+            clazz = defineClass(name, buf, 0, buf.length);
+            instrumentation.phaseCompleted(Phase.DEFINE, name, start, buf.length);
+            classeryLoader.classDefined(this, name, clazz);
+            return clazz;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%s%s]", getName(), jarFile, unloaded ? ", unloaded" : "");
+    }
+}
@@ -0,0 +1,125 @@
+package software.kloud.classery.loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Least recently used cache of plugin resource contents, bounded by their total size.
+ * <p>
+ * Resources larger than a sixteenth of the cache are served but never cached, so a single large resource can not
+ * evict everything else. A maximum size of 0 disables caching
+ */
+public final class ResourceCache {
+    public static final long DEFAULT_MAX_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_ENTRY_SHARE = 16;
+    /**
+     * Guarded by {@code this}, in access order
+     */
+    private final LinkedHashMap<ResourceLocation, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long maxBytes;
+    private long bytes = 0;
+
+    ResourceCache(long maxBytes) {
+        setMaxBytes(maxBytes);
+    }
+
+    /**
+     * Returns the cached content of {@code location} or reads and caches it.
+     * The returned array is shared and must not be modified
+     */
+    byte[] get(ResourceLocation location, ResourceReader reader) throws IOException {
+        synchronized (this) {
+            var cached = entries.get(location);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+        // Read outside of the lock, concurrent misses of one resource may both read it
+        var content = reader.read(location);
+        synchronized (this) {
+            if (content.length <= maxBytes / MAX_ENTRY_SHARE) {
+                var previous = entries.put(location, content);
+                bytes += content.length - (previous == null ? 0 : previous.length);
+                evict();
+            }
+        }
+        return content;
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @param maxBytes upper bound for the total size of cached resources, 0 to disable caching
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException(String.format("Cache size must not be negative, got %d", maxBytes));
+        }
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * @return Total size of all cached resources in bytes
+     */
+    public synchronized long getSize() {
+        return bytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Drops all cached resources of {@code jarFile}, including the ones of its nested jars
+     */
+    public synchronized void invalidate(File jarFile) {
+        var it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            var entry = it.next();
+            if (entry.getKey().getJarFile().equals(jarFile)) {
+                bytes -= entry.getValue().length;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<ResourceLocation, byte[]>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().getValue().length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Reads the content of a resource on a cache miss
+     */
+    @FunctionalInterface
+    interface ResourceReader {
+        byte[] read(ResourceLocation location) throws IOException;
+    }
+}
@@ -0,0 +1,112 @@
+package software.kloud.classery.loader;
+
+import software.kloud.classery.jar.ClassFileHolder;
+import software.kloud.classery.jar.JarStateHolder;
+import software.kloud.classery.jar.ZipArchive;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resource name to location index over all plugin jars, so {@link ClassLoader#getResource(String)} and
+ * {@link java.util.ServiceLoader} lookups are a hash lookup instead of a search through every jar.
+ * <p>
+ * Resources are named like classes: entries of nested jars by their name inside the nested jar and
+ * {@code BOOT-INF/classes/} is stripped. Class files are resources as well. Locations of one name keep the order their
+ * jars were added in
+ */
+final class ResourceIndex {
+    private static final String BOOT_CLASSES_PREFIX = "BOOT-INF/classes/";
+    private final Map<String, List<ResourceLocation>> locations = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the resources of a jar
+     *
+     * @param jar        jar the entries belong to
+     * @param entryNames resource entries of the jar, see {@link JarStateHolder#getResourceEntries()}
+     * @param inPlace    true if entries are read from the jar, false if they were extracted
+     */
+    void addAll(JarStateHolder jar, Collection<String> entryNames, boolean inPlace) {
+        for (String entryName : entryNames) {
+            // Nested jars do not get extracted, their resources are always read from the jar
+            var extractedFile = inPlace || entryName.contains(ZipArchive.NESTED_SEPARATOR)
+                    ? null
+                    : new File(jar.getUnzippedDirectory(), entryName);
+            var location = new ResourceLocation(jar.getZippedJarFile(), entryName, extractedFile);
+            locations.merge(getResourceName(entryName), List.of(location), ResourceIndex::append);
+        }
+    }
+
+    /**
+     * Adds the class files of a jar, so they can be read as resources like {@code com/acme/Foo.class}
+     *
+     * @param jar        jar the classes belong to
+     * @param classFiles classes of the jar, archived or extracted
+     */
+    void addClasses(JarStateHolder jar, Collection<ClassFileHolder> classFiles) {
+        var unzippedDirectory = jar.getUnzippedDirectory() == null ? null : jar.getUnzippedDirectory().toPath();
+        for (ClassFileHolder classFileHolder : classFiles) {
+            ResourceLocation location;
+            String name;
+            if (classFileHolder.isArchived()) {
+                location = new ResourceLocation(jar.getZippedJarFile(), classFileHolder.getEntryName(), null);
+                name = getResourceName(classFileHolder.getEntryName());
+            } else {
+                var classFile = classFileHolder.getClassFile().toPath();
+                var entryName = unzippedDirectory != null && classFile.startsWith(unzippedDirectory)
+                        ? unzippedDirectory.relativize(classFile).toString().replace(File.separatorChar, '/')
+                        : classFileHolder.getAbsoluteClassName().replace('.', '/') + ".class";
+                location = new ResourceLocation(jar.getZippedJarFile(), entryName, classFileHolder.getClassFile());
+                name = getResourceName(entryName);
+            }
+            locations.merge(name, List.of(location), ResourceIndex::append);
+        }
+    }
+
+    /**
+     * @return First location of {@code name}, {@code null} if no jar contains it
+     */
+    ResourceLocation find(String name) {
+        var found = locations.get(name);
+        return found == null ? null : found.get(0);
+    }
+
+    /**
+     * @return Location of {@code name} in {@code jarFile}, {@code null} if the jar does not contain it
+     */
+    ResourceLocation find(String name, File jarFile) {
+        for (ResourceLocation location : findAll(name)) {
+            if (location.getJarFile().equals(jarFile)) return location;
+        }
+        return null;
+    }
+
+    /**
+     * @return All locations of {@code name}
+     */
+    List<ResourceLocation> findAll(String name) {
+        return locations.getOrDefault(name, Collections.emptyList());
+    }
+
+    int size() {
+        return locations.size();
+    }
+
+    /**
+     * @return Name a resource is looked up by, e.g. {@code META-INF/services/com.acme.Plugin} for
+     * {@code BOOT-INF/lib/a.jar!/META-INF/services/com.acme.Plugin}
+     */
+    static String getResourceName(String entryName) {
+        int nestedEntryStart = entryName.lastIndexOf(ZipArchive.NESTED_SEPARATOR);
+        var name = nestedEntryStart < 0 ? entryName : entryName.substring(nestedEntryStart + ZipArchive.NESTED_SEPARATOR.length());
+        return name.startsWith(BOOT_CLASSES_PREFIX) ? name.substring(BOOT_CLASSES_PREFIX.length()) : name;
+    }
+
+    private static List<ResourceLocation> append(List<ResourceLocation> present, List<ResourceLocation> added) {
+        List<ResourceLocation> merged = new ArrayList<>(present.size() + added.size());
+        merged.addAll(present);
+        merged.addAll(added);
+        return Collections.unmodifiableList(merged);
+    }
+}
@@ -0,0 +1,129 @@
+package software.kloud.classery.loader;
+
+import software.kloud.classery.jar.ZipArchive;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.Objects;
+
+/**
+ * Where a resource of a plugin jar lives: an entry of the jar, possibly of one of its nested jars, and the extracted
+ * file if the jar was unpacked
+ */
+final class ResourceLocation {
+    static final String PROTOCOL = "classery";
+    private final File jarFile;
+    private final String entryName;
+    private final File extractedFile;
+
+    /**
+     * @param jarFile       jar containing the resource
+     * @param entryName     entry name, {@code <nested jar>!/<entry>} for entries of nested jars
+     * @param extractedFile extracted copy of the entry, {@code null} to read it from the jar
+     */
+    ResourceLocation(File jarFile, String entryName, File extractedFile) {
+        this.jarFile = jarFile;
+        this.entryName = entryName;
+        this.extractedFile = extractedFile;
+    }
+
+    File getJarFile() {
+        return jarFile;
+    }
+
+    String getEntryName() {
+        return entryName;
+    }
+
+    File getExtractedFile() {
+        return extractedFile;
+    }
+
+    boolean isArchived() {
+        return extractedFile == null;
+    }
+
+    boolean isNested() {
+        return entryName.contains(ZipArchive.NESTED_SEPARATOR);
+    }
+
+    /**
+     * @return {@code classery:<jar>!/<entry>} URL whose streams read the resource through {@code loader}
+     */
+    URL toUrl(ClasseryLoader loader) {
+        try {
+            return new URL(PROTOCOL, null, -1, toString(), new Handler(loader, this));
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(String.format("Can not build URL for %s", this), e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ResourceLocation that = (ResourceLocation) o;
+        return jarFile.equals(that.jarFile) && entryName.equals(that.entryName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(jarFile, entryName);
+    }
+
+    @Override
+    public String toString() {
+        return jarFile.getPath() + ZipArchive.NESTED_SEPARATOR + entryName;
+    }
+
+    private static final class Handler extends URLStreamHandler {
+        private final ClasseryLoader loader;
+        private final ResourceLocation location;
+
+        private Handler(ClasseryLoader loader, ResourceLocation location) {
+            this.loader = loader;
+            this.location = location;
+        }
+
+        @Override
+        protected URLConnection openConnection(URL url) {
+            return new URLConnection(url) {
+                private byte[] content;
+
+                @Override
+                public void connect() throws IOException {
+                    if (connected) return;
+                    content = loader.readResource(location);
+                    connected = true;
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    connect();
+                    return new ByteArrayInputStream(content);
+                }
+
+                @Override
+                public long getContentLengthLong() {
+                    try {
+                        connect();
+                        return content.length;
+                    } catch (IOException e) {
+                        return -1;
+                    }
+                }
+
+                @Override
+                public long getLastModified() {
+                    return location.getJarFile().lastModified();
+                }
+            };
+        }
+    }
+}
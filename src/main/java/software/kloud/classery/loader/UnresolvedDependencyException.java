@@ -0,0 +1,22 @@
+package software.kloud.classery.loader;
+
+import java.util.List;
+
+/**
+ * Thrown if the {@link DefinitionPlan} contains {@link MissingDependency}s. {@link ClasseryLoader#load()} throws it before any class gets defined,
+ * {@link ClasseryLoader#publishClasses()} fails with it once all resolvable classes were published
+ */
+public class UnresolvedDependencyException extends Exception {
+    private static final long serialVersionUID = 1L;
+    private final List<MissingDependency> missingDependencies;
+
+    public UnresolvedDependencyException(List<MissingDependency> missingDependencies) {
+        super(String.format("%d classes have unresolved dependencies, first: %s",
+                missingDependencies.size(), missingDependencies.isEmpty() ? "none" : missingDependencies.get(0)));
+        this.missingDependencies = List.copyOf(missingDependencies);
+    }
+
+    public List<MissingDependency> getMissingDependencies() {
+        return missingDependencies;
+    }
+}
@@ -0,0 +1,33 @@
+package software.kloud.classery.metrics;
+
+/**
+ * How the scanner dealt with a jar it found
+ */
+public enum CacheResult {
+    /**
+     * Size and modification time matched the scan cache, the jar was not even hashed
+     */
+    UNCHANGED(true),
+    /**
+     * The jar was touched but its fingerprint matched the scan cache
+     */
+    SAME_CONTENT(true),
+    /**
+     * Another jar with the same fingerprint was scanned already, its index and extracted tree got reused
+     */
+    DUPLICATE(true),
+    /**
+     * The jar was new or changed and got indexed, and extracted if extracting
+     */
+    MISS(false);
+
+    private final boolean hit;
+
+    CacheResult(boolean hit) {
+        this.hit = hit;
+    }
+
+    public boolean isHit() {
+        return hit;
+    }
+}
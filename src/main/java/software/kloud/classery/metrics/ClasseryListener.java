@@ -0,0 +1,31 @@
+package software.kloud.classery.metrics;
+
+import java.io.File;
+
+/**
+ * Receives timings of scanning and loading, register it with {@link Instrumentation#addListener(ClasseryListener)}.
+ * <p>
+ * Methods get called on the scanner and loader threads, often concurrently, and have to be thread safe and fast.
+ * Exceptions are logged and otherwise ignored. See {@link ClasseryMetrics} for a listener aggregating everything
+ */
+public interface ClasseryListener {
+    /**
+     * @param phase         finished phase
+     * @param subject       path of the jar, or the binary class name for {@link Phase#READ}, {@link Phase#TRANSFORM} and {@link Phase#DEFINE}
+     * @param durationNanos time the phase took
+     * @param bytes         bytes read or written, see {@link Phase}
+     */
+    default void phaseCompleted(Phase phase, String subject, long durationNanos, long bytes) {
+    }
+
+    /**
+     * Called once per jar and scan, after the jar was hashed, indexed and extracted as needed
+     *
+     * @param jarFile       scanned jar
+     * @param cacheResult   whether the scan cache could be used
+     * @param durationNanos time from finding the jar until it was done, {@link Phase#HASH}, {@link Phase#TRAVERSE}
+     *                      and {@link Phase#UNPACK} included
+     */
+    default void jarScanned(File jarFile, CacheResult cacheResult, long durationNanos) {
+    }
+}
@@ -0,0 +1,129 @@
+package software.kloud.classery.metrics;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener adding up everything reported, ready to be polled by a dashboard:
+ * <pre>
+ * var metrics = new ClasseryMetrics();
+ * loader.getInstrumentation().addListener(metrics);
+ * loader.load();
+ * logger.info(metrics.toString());
+ * </pre>
+ */
+@SuppressWarnings("WeakerAccess")
+public class ClasseryMetrics implements ClasseryListener {
+    private final Map<Phase, PhaseMetrics> phases = new EnumMap<>(Phase.class);
+    private final Map<CacheResult, LongAdder> cacheResults = new EnumMap<>(CacheResult.class);
+    private final LatencyHistogram jarScanLatency = new LatencyHistogram();
+    private final Map<File, LatencyHistogram> jarScanLatencyByJar = new ConcurrentHashMap<>();
+
+    public ClasseryMetrics() {
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, new PhaseMetrics());
+        }
+        for (CacheResult cacheResult : CacheResult.values()) {
+            cacheResults.put(cacheResult, new LongAdder());
+        }
+    }
+
+    @Override
+    public void phaseCompleted(Phase phase, String subject, long durationNanos, long bytes) {
+        var metrics = phases.get(phase);
+        metrics.count.increment();
+        metrics.nanos.add(durationNanos);
+        metrics.bytes.add(bytes);
+        metrics.latency.record(durationNanos);
+    }
+
+    @Override
+    public void jarScanned(File jarFile, CacheResult cacheResult, long durationNanos) {
+        cacheResults.get(cacheResult).increment();
+        jarScanLatency.record(durationNanos);
+        jarScanLatencyByJar.computeIfAbsent(jarFile, f -> new LatencyHistogram()).record(durationNanos);
+    }
+
+    public long getCount(Phase phase) {
+        return phases.get(phase).count.sum();
+    }
+
+    public long getTotalNanos(Phase phase) {
+        return phases.get(phase).nanos.sum();
+    }
+
+    public long getBytes(Phase phase) {
+        return phases.get(phase).bytes.sum();
+    }
+
+    public LatencyHistogram getLatency(Phase phase) {
+        return phases.get(phase).latency;
+    }
+
+    /**
+     * @return Bytes of hashed jars and of read class files
+     */
+    public long getBytesRead() {
+        return getBytes(Phase.HASH) + getBytes(Phase.READ);
+    }
+
+    /**
+     * @return Bytes extracted to disk
+     */
+    public long getBytesWritten() {
+        return getBytes(Phase.UNPACK);
+    }
+
+    public long getCount(CacheResult cacheResult) {
+        return cacheResults.get(cacheResult).sum();
+    }
+
+    public long getCacheHits() {
+        long hits = 0;
+        for (CacheResult cacheResult : CacheResult.values()) {
+            if (cacheResult.isHit()) hits += getCount(cacheResult);
+        }
+        return hits;
+    }
+
+    public long getCacheMisses() {
+        return getCount(CacheResult.MISS);
+    }
+
+    /**
+     * @return Scan latency over all jars
+     */
+    public LatencyHistogram getJarScanLatency() {
+        return jarScanLatency;
+    }
+
+    /**
+     * @return Scan latency of every jar seen so far, over all scans
+     */
+    public Map<File, LatencyHistogram> getJarScanLatencyByJar() {
+        return Collections.unmodifiableMap(new HashMap<>(jarScanLatencyByJar));
+    }
+
+    @Override
+    public String toString() {
+        var res = new StringBuilder(String.format("jars: hits=%d misses=%d scan[%s]",
+                getCacheHits(), getCacheMisses(), jarScanLatency));
+        for (Phase phase : Phase.values()) {
+            res.append(String.format(", %s: total=%dms bytes=%d [%s]", phase.name().toLowerCase(),
+                    getTotalNanos(phase) / 1_000_000, getBytes(phase), getLatency(phase)));
+        }
+        return res.toString();
+    }
+
+    private static final class PhaseMetrics {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+}
@@ -0,0 +1,99 @@
+package software.kloud.classery.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Times the phases of scanning and loading and hands them to the registered {@link ClasseryListener}s and to
+ * Java Flight Recorder as {@code software.kloud.classery.Phase} and {@code software.kloud.classery.JarScan} events.
+ * <p>
+ * Without listeners and without a recording of these events {@link #start()} does not even read the clock,
+ * every call site then costs a volatile read and a branch
+ */
+public final class Instrumentation {
+    private static final Logger logger = LoggerFactory.getLogger(Instrumentation.class);
+    /**
+     * Returned by {@link #start()} when nothing listens, makes the matching completion a no-op
+     */
+    public static final long DISABLED = Long.MIN_VALUE;
+    private static final boolean JFR_AVAILABLE = isJfrAvailable();
+    private final List<ClasseryListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean hasListeners = false;
+
+    public void addListener(ClasseryListener listener) {
+        listeners.add(Objects.requireNonNull(listener));
+        hasListeners = true;
+    }
+
+    public void removeListener(ClasseryListener listener) {
+        listeners.remove(listener);
+        hasListeners = !listeners.isEmpty();
+    }
+
+    /**
+     * @return true if a listener is registered or a flight recording records Classery events
+     */
+    public boolean isEnabled() {
+        return hasListeners || (JFR_AVAILABLE && JfrEvents.isEnabled());
+    }
+
+    /**
+     * @return Start of a phase to pass to {@link #phaseCompleted} or {@link #jarScanned}, {@link #DISABLED} if
+     * nothing listens
+     */
+    public long start() {
+        return isEnabled() ? System.nanoTime() : DISABLED;
+    }
+
+    /**
+     * @param phase   finished phase
+     * @param subject jar path, or the class name for {@link Phase#READ}, {@link Phase#TRANSFORM} and {@link Phase#DEFINE}
+     * @param start   value of {@link #start()} taken before the phase
+     * @param bytes   bytes read or written, see {@link Phase}
+     */
+    public void phaseCompleted(Phase phase, String subject, long start, long bytes) {
+        if (start == DISABLED) return;
+        long duration = System.nanoTime() - start;
+        for (ClasseryListener listener : listeners) {
+            try {
+                listener.phaseCompleted(phase, subject, duration, bytes);
+            } catch (RuntimeException e) {
+                logger.warn(String.format("Listener %s failed on phase %s of %s", listener, phase, subject), e);
+            }
+        }
+        if (JFR_AVAILABLE) JfrEvents.commitPhase(phase, subject, duration, bytes);
+    }
+
+    /**
+     * @param jarFile     scanned jar
+     * @param cacheResult whether the scan cache could be used
+     * @param start       value of {@link #start()} taken when the jar was found
+     */
+    public void jarScanned(File jarFile, CacheResult cacheResult, long start) {
+        if (start == DISABLED) return;
+        long duration = System.nanoTime() - start;
+        for (ClasseryListener listener : listeners) {
+            try {
+                listener.jarScanned(jarFile, cacheResult, duration);
+            } catch (RuntimeException e) {
+                logger.warn(String.format("Listener %s failed on scan of %s", listener, jarFile), e);
+            }
+        }
+        if (JFR_AVAILABLE) JfrEvents.commitJarScan(jarFile, cacheResult, duration);
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, Instrumentation.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            // Runtime without the jdk.jfr module, listeners still work
+            return false;
+        }
+    }
+}
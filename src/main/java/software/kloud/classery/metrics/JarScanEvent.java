@@ -0,0 +1,26 @@
+package software.kloud.classery.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * Committed when the scanner is done with a jar, {@code elapsed} holds how long it took
+ */
+@Name("software.kloud.classery.JarScan")
+@Label("Classery Jar Scan")
+@Category("Classery")
+@Description("A jar checked against the scan cache and, if changed, indexed and extracted")
+@StackTrace(false)
+class JarScanEvent extends Event {
+    @Label("Jar File")
+    String jarFile;
+
+    @Label("Cache Result")
+    String cacheResult;
+
+    @Label("Cache Hit")
+    boolean hit;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+}
@@ -0,0 +1,40 @@
+package software.kloud.classery.metrics;
+
+import jdk.jfr.EventType;
+
+import java.io.File;
+
+/**
+ * Commits the flight recorder events. Only touched after {@link Instrumentation} checked jdk.jfr is present
+ */
+final class JfrEvents {
+    private static final EventType phaseEventType = EventType.getEventType(PhaseEvent.class);
+    private static final EventType jarScanEventType = EventType.getEventType(JarScanEvent.class);
+
+    private JfrEvents() {
+    }
+
+    static boolean isEnabled() {
+        return phaseEventType.isEnabled() || jarScanEventType.isEnabled();
+    }
+
+    static void commitPhase(Phase phase, String subject, long durationNanos, long bytes) {
+        if (!phaseEventType.isEnabled()) return;
+        var event = new PhaseEvent();
+        event.phase = phase.name();
+        event.subject = subject;
+        event.elapsed = durationNanos;
+        event.bytes = bytes;
+        event.commit();
+    }
+
+    static void commitJarScan(File jarFile, CacheResult cacheResult, long durationNanos) {
+        if (!jarScanEventType.isEnabled()) return;
+        var event = new JarScanEvent();
+        event.jarFile = jarFile.getPath();
+        event.cacheResult = cacheResult.name();
+        event.hit = cacheResult.isHit();
+        event.elapsed = durationNanos;
+        event.commit();
+    }
+}
@@ -0,0 +1,86 @@
+package software.kloud.classery.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Lock free histogram of durations in nanoseconds with power of two buckets.
+ * Bucket {@code i} counts durations below {@code 2^i} ns and at least {@code 2^(i-1)} ns, so percentiles are exact
+ * to within a factor of two, which is plenty to spot a slow jar
+ */
+@SuppressWarnings("WeakerAccess")
+public class LatencyHistogram {
+    public static final int BUCKET_COUNT = 64;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long durationNanos) {
+        long duration = Math.max(durationNanos, 0);
+        buckets.incrementAndGet(BUCKET_COUNT - Long.numberOfLeadingZeros(duration));
+        max.accumulate(duration);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return Longest recorded duration in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return Upper bound in nanoseconds of the bucket holding the percentile, never above {@link #getMax()}.
+     * 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException(String.format("Percentile %s is not between 0 and 100", percentile));
+        }
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(getBucketUpperBound(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * @return Snapshot of all bucket counts, see {@link #getBucketUpperBound(int)}
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * @return Exclusive upper bound in nanoseconds of durations counted in {@code bucket}
+     */
+    public static long getBucketUpperBound(int bucket) {
+        return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d p50=%dus p99=%dus max=%dus",
+                getCount(), getPercentile(50) / 1000, getPercentile(99) / 1000, getMax() / 1000);
+    }
+}
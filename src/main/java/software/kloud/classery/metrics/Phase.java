@@ -0,0 +1,31 @@
+package software.kloud.classery.metrics;
+
+/**
+ * Steps of scanning and loading timed by {@link Instrumentation}
+ */
+public enum Phase {
+    /**
+     * Fingerprinting a changed jar. Bytes are the size of the jar
+     */
+    HASH,
+    /**
+     * Extracting a jar to disk. Bytes are the bytes written
+     */
+    UNPACK,
+    /**
+     * Listing the class files of a jar or of its extracted directory
+     */
+    TRAVERSE,
+    /**
+     * Reading a single class file or resource. Bytes are the size of the file
+     */
+    READ,
+    /**
+     * Running all {@code ClassTransformer}s over a single class file. Bytes are the size of the transformed class file
+     */
+    TRANSFORM,
+    /**
+     * Defining a single class. Bytes are the size of the class file
+     */
+    DEFINE
+}
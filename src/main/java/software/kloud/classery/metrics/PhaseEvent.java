@@ -0,0 +1,28 @@
+package software.kloud.classery.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * Committed when a {@link Phase} ends, {@code elapsed} holds how long it took
+ */
+@Name("software.kloud.classery.Phase")
+@Label("Classery Phase")
+@Category("Classery")
+@Description("A finished phase of scanning or loading plugins")
+@StackTrace(false)
+class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Subject")
+    @Description("Jar path, or class name for READ, TRANSFORM and DEFINE")
+    String subject;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+}
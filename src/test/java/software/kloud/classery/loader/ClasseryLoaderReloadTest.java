@@ -0,0 +1,84 @@
+package software.kloud.classery.loader;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import software.kloud.classery.jar.JarUnpackingException;
+
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ClasseryLoaderReloadTest {
+    private File workDirectory;
+    private File pluginDirectory;
+    private File jarFile;
+    private ClasseryLoader loader;
+
+    @Before
+    public void setUp() throws IOException, JarUnpackingException {
+        workDirectory = Files.createTempDirectory("classery-reload").toFile();
+        pluginDirectory = new File(workDirectory, "plugins");
+        Files.createDirectories(pluginDirectory.toPath());
+        jarFile = new File(pluginDirectory, "a.jar");
+        writePluginJar("v1", 1_000_000_000L);
+        loader = new ClasseryLoader(new File(workDirectory, "base"), List.of(pluginDirectory));
+        loader.setIsolation(ClasseryLoader.Isolation.PER_JAR);
+        loader.index();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        loader.close();
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void reloadsClassesResolvedThroughForName() throws Exception {
+        var v1 = Class.forName("p.A", true, loader.getDelegatingLoader());
+        assertEquals("v1", v1.getMethod("version").invoke(null));
+
+        writePluginJar("v2", 2_000_000_000L);
+        var unloaded = loader.reloadDirectory(pluginDirectory);
+        assertTrue(unloaded.contains(jarFile.getAbsoluteFile()));
+
+        var v2 = Class.forName("p.A", true, loader.getDelegatingLoader());
+        assertNotSame(v1, v2);
+        assertEquals("v2", v2.getMethod("version").invoke(null));
+        assertSame(v2, loader.getDelegatingLoader().loadClass("p.A"));
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void doesNotResolvePluginClassesItself() throws Exception {
+        Class.forName("p.A", true, loader);
+    }
+
+    private void writePluginJar(String version, long lastModified) throws IOException {
+        var sourceDirectory = new File(workDirectory, "src-" + version);
+        var classDirectory = new File(workDirectory, "classes-" + version);
+        var source = new File(sourceDirectory, "p/A.java");
+        Files.createDirectories(source.getParentFile().toPath());
+        Files.createDirectories(classDirectory.toPath());
+        Files.write(source.toPath(), String.format(
+                "package p; public class A { public static String version() { return \"%s\"; } }", version)
+                .getBytes(StandardCharsets.UTF_8));
+        int result = ToolProvider.getSystemJavaCompiler()
+                .run(null, null, null, "-d", classDirectory.getPath(), source.getPath());
+        assertEquals(0, result);
+
+        try (var out = new JarOutputStream(Files.newOutputStream(jarFile.toPath()))) {
+            out.putNextEntry(new JarEntry("p/A.class"));
+            out.write(Files.readAllBytes(new File(classDirectory, "p/A.class").toPath()));
+            out.closeEntry();
+        }
+        assertTrue(jarFile.setLastModified(lastModified));
+    }
+}